@@ -0,0 +1,101 @@
+package net.yudichev.jiotty.common.async;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Throughput and, when run with {@code -prof gc}, allocation per task of the {@link SchedulingExecutor} hot paths. The
+ * {@code implementation} parameter compares {@link SingleThreadedSchedulingExecutor} with the {@link ScheduledThreadPoolSchedulingExecutor}
+ * baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulingExecutorBenchmark {
+    private static final int BATCH_SIZE = 1000;
+    private static final Runnable NOOP_RUNNABLE = () -> {};
+    private static final Callable<Object> NOOP_CALLABLE = () -> null;
+    private static final Duration FAR_FUTURE = Duration.ofHours(1);
+
+    @Param({"singleThreaded", "scheduledThreadPool", "sharedPool", "virtualThreads"})
+    public String implementation;
+
+    private SharedPoolExecutorFactory sharedPoolExecutorFactory;
+    private VirtualThreadExecutorFactory virtualThreadExecutorFactory;
+    private SchedulingExecutor executor;
+
+    @Setup
+    public void setUp() {
+        executor = switch (implementation) {
+            case "singleThreaded" -> new SingleThreadedSchedulingExecutor("benchmark");
+            case "scheduledThreadPool" -> new ScheduledThreadPoolSchedulingExecutor("benchmark");
+            case "sharedPool" -> {
+                sharedPoolExecutorFactory = new SharedPoolExecutorFactory(2);
+                yield sharedPoolExecutorFactory.createSingleThreadedSchedulingExecutor("benchmark");
+            }
+            case "virtualThreads" -> {
+                virtualThreadExecutorFactory = new VirtualThreadExecutorFactory();
+                yield virtualThreadExecutorFactory.createSingleThreadedSchedulingExecutor("benchmark");
+            }
+            default -> throw new IllegalArgumentException("Unknown implementation " + implementation);
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+        if (sharedPoolExecutorFactory != null) {
+            sharedPoolExecutorFactory.close();
+        }
+        if (virtualThreadExecutorFactory != null) {
+            virtualThreadExecutorFactory.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object execute() {
+        for (int i = 0; i < BATCH_SIZE - 1; i++) {
+            executor.execute(NOOP_RUNNABLE);
+        }
+        return executor.submit(NOOP_RUNNABLE).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object submit() {
+        CompletableFuture<Object> lastFuture = null;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            lastFuture = executor.submit(NOOP_CALLABLE);
+        }
+        return lastFuture.join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void scheduleAndCancel() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            executor.schedule(FAR_FUTURE, NOOP_RUNNABLE).close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.yudichev.jiotty.common.async.backoff;
+
+import com.google.inject.Guice;
+import net.yudichev.jiotty.common.inject.ExposedKeyModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static net.yudichev.jiotty.common.inject.BindingSpec.exposedBy;
+import static net.yudichev.jiotty.common.inject.BindingSpec.literally;
+
+/**
+ * Overhead that {@link RetryableOperationExecutor} adds to an operation that succeeds first time, compared to calling it directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetryableOperationExecutorBenchmark {
+    private final Supplier<CompletableFuture<String>> action = () -> CompletableFuture.completedFuture("result");
+    private RetryableOperationExecutor retryableOperationExecutor;
+
+    @Setup
+    public void setUp() {
+        ExposedKeyModule<RetryableOperationExecutor> module = RetryableOperationExecutorModule
+                .builder()
+                .setBackingOffExceptionHandler(exposedBy(BackingOffExceptionHandlerModule.builder()
+                                                                                         .setRetryableExceptionPredicate(literally(e -> true))
+                                                                                         .build()))
+                .build();
+        retryableOperationExecutor = Guice.createInjector(module).getInstance(module.getExposedKey());
+    }
+
+    @Benchmark
+    public String direct() {
+        return action.get().join();
+    }
+
+    @Benchmark
+    public String withBackOffAndRetry() {
+        return retryableOperationExecutor.withBackOffAndRetry("benchmark", action).join();
+    }
+}
@@ -0,0 +1,73 @@
+package net.yudichev.jiotty.common.lang;
+
+import net.yudichev.jiotty.common.async.SingleThreadedSchedulingExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Optional;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * {@link ConflatingInbox} and {@link DispatchingConflatingConsumer}: uncontended cost, and a burst of values delivered to a consumer on
+ * another thread, where most values are expected to be conflated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConflatingBenchmark {
+    private static final int BURST_SIZE = 1000;
+
+    private final Integer value = 42;
+    private ConflatingInbox<Integer> inbox;
+    private DispatchingConflatingConsumer<Integer> directConsumer;
+    private DispatchingConflatingConsumer<Integer> dispatchingConsumer;
+    private SingleThreadedSchedulingExecutor executor;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        inbox = new ConflatingInbox<>();
+        directConsumer = new DispatchingConflatingConsumer<>(Runnable::run, supplier -> blackhole.consume(supplier.get()));
+        executor = new SingleThreadedSchedulingExecutor("conflating-benchmark");
+        dispatchingConsumer = new DispatchingConflatingConsumer<>(executor, supplier -> blackhole.consume(supplier.get()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Benchmark
+    public Optional<Integer> inboxAddAndGet() {
+        inbox.add(value);
+        return inbox.get();
+    }
+
+    @Benchmark
+    public void consumerOnDirectExecutor() {
+        directConsumer.accept(value);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST_SIZE)
+    public Object burstToConsumerOnOtherThread() {
+        for (int i = 0; i < BURST_SIZE; i++) {
+            dispatchingConsumer.accept(value);
+        }
+        return executor.submit(() -> {}).join();
+    }
+}
@@ -0,0 +1,47 @@
+package net.yudichev.jiotty.common.lang;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * {@link DeduplicatingConsumer} when values repeat (filtered out) and when they alternate (all passed on).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeduplicatingConsumerBenchmark {
+    private final String value1 = "value1";
+    private final String value2 = "value2";
+    private DeduplicatingConsumer<String> consumer;
+    private boolean flip;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        consumer = new DeduplicatingConsumer<>(EqualityComparator.equality(), blackhole::consume);
+    }
+
+    @Benchmark
+    public void duplicateValue() {
+        consumer.accept(value1);
+    }
+
+    @Benchmark
+    public void alternatingValues() {
+        flip = !flip;
+        consumer.accept(flip ? value1 : value2);
+    }
+}
@@ -0,0 +1,48 @@
+package net.yudichev.jiotty.common.lang;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * {@link Json} parsing and serialisation of a typical small device state message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    private final String json = "{\"id\":\"0x00158d0001a2b3c4\",\"power\":1234.5,\"on\":true,\"tags\":[\"kitchen\",\"plug\"]}";
+    private final DeviceState deviceState = new DeviceState("0x00158d0001a2b3c4", 1234.5, true, List.of("kitchen", "plug"));
+
+    @Benchmark
+    public JsonNode parseTree() {
+        return Json.parse(json);
+    }
+
+    @Benchmark
+    public DeviceState parseToClass() {
+        return Json.parse(json, DeviceState.class);
+    }
+
+    @Benchmark
+    public String stringify() {
+        return Json.stringify(deviceState);
+    }
+
+    public record DeviceState(String id, double power, boolean on, List<String> tags) {
+    }
+}
@@ -0,0 +1,47 @@
+package net.yudichev.jiotty.common.lang;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Fan-out cost of {@link Listeners#notify(Object)} by number of listeners.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenersBenchmark {
+    @Param({"1", "10", "100"})
+    public int listenerCount;
+
+    private Listeners<Object> listeners;
+    private Object value;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        listeners = new Listeners<>();
+        for (int i = 0; i < listenerCount; i++) {
+            listeners.addListener(blackhole::consume);
+        }
+        value = new Object();
+    }
+
+    @Benchmark
+    public void notifyListeners() {
+        listeners.notify(value);
+    }
+}
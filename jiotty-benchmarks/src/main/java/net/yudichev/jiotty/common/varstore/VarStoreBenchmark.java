@@ -0,0 +1,100 @@
+package net.yudichev.jiotty.common.varstore;
+
+import net.yudichev.jiotty.common.async.ExecutorFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Save and read of one key in a store that already holds {@code keyCount} keys: {@link VarStoreImpl} re-reads and rewrites the file on every
+ * call, {@link CachingVarStore} serves both from memory and writes the file in the background, {@link JournalingVarStore} serves reads
+ * from memory and appends a record per save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VarStoreBenchmark {
+    @Param({"10", "100"})
+    public int keyCount;
+
+    @Param({"direct", "caching", "journal"})
+    public String implementation;
+
+    private Path storeDir;
+    private VarStore varStore;
+    private CachingVarStore cachingVarStore;
+    private VarBinding<StoredValue> binding;
+    private StoredValue value;
+    private int counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        storeDir = Files.createTempDirectory("varstore-benchmark");
+        Path storeFile = storeDir.resolve("data.json");
+        varStore = switch (implementation) {
+            case "direct" -> new VarStoreImpl(storeFile);
+            case "caching" -> {
+                cachingVarStore = new CachingVarStore(storeFile, new ExecutorFactoryImpl(), Duration.ofMillis(100));
+                cachingVarStore.start();
+                yield cachingVarStore;
+            }
+            case "journal" -> new JournalingVarStore(storeFile, new ExecutorFactoryImpl(), 1024 * 1024);
+            default -> throw new IllegalArgumentException("Unknown implementation: " + implementation);
+        };
+        for (int i = 0; i < keyCount; i++) {
+            varStore.saveValue("key" + i, new StoredValue("value" + i, i));
+        }
+        value = new StoredValue("value", 0);
+        binding = varStore.binding(StoredValue.class, "key0");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (cachingVarStore != null) {
+            cachingVarStore.stop();
+        }
+        try (Stream<Path> paths = Files.walk(storeDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void save() {
+        varStore.saveValue("key" + (counter++ % keyCount), value);
+    }
+
+    @Benchmark
+    public Optional<StoredValue> read() {
+        return varStore.readValue(StoredValue.class, "key" + (counter++ % keyCount));
+    }
+
+    @Benchmark
+    public Optional<StoredValue> readBinding() {
+        return binding.get();
+    }
+
+    public record StoredValue(String name, int number) {
+    }
+}
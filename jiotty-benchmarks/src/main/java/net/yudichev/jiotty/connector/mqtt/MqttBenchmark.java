@@ -0,0 +1,94 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Semaphore;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * End-to-end delivery through {@link Mqtt} between two clients connected to an {@link EmbeddedMqttBroker}: throughput of a burst of messages
+ * over several topics, and the latency of a single message (see the percentiles of the sample time mode).
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttBenchmark {
+    private static final int BURST_SIZE = 1000;
+    private static final int TOPIC_COUNT = 16;
+
+    @Param({"0", "1", "2"})
+    public int qos;
+    @Param({"0", "4"})
+    public int dispatchStripes;
+
+    private final byte[] payload = new byte[64];
+    private final Semaphore receivedMessages = new Semaphore(0);
+    private final String[] topics = new String[TOPIC_COUNT];
+    private EmbeddedMqttBroker broker;
+    private MqttImpl publisher;
+    private MqttImpl subscriber;
+    private Closeable subscription;
+    private PublishOptions publishOptions;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        broker = EmbeddedMqttBroker.start();
+        publisher = broker.newClient("publisher", 0);
+        subscriber = broker.newClient("subscriber", dispatchStripes);
+        publisher.start();
+        subscriber.start();
+        publishOptions = PublishOptions.builder().setQos(qos).build();
+        for (int i = 0; i < TOPIC_COUNT; i++) {
+            topics[i] = "benchmark/" + i;
+        }
+        subscription = subscriber.subscribeBytes("benchmark/#", (topic, message) -> receivedMessages.release());
+        // the subscription becomes active asynchronously
+        do {
+            publisher.publish(topics[0], payload, publishOptions);
+        } while (!receivedMessages.tryAcquire(100, MILLISECONDS));
+        Thread.sleep(100);
+        receivedMessages.drainPermits();
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscription.close();
+        subscriber.stop();
+        publisher.stop();
+        broker.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(BURST_SIZE)
+    public void burstOverTopics() throws InterruptedException {
+        for (int i = 0; i < BURST_SIZE; i++) {
+            publisher.publish(topics[i % TOPIC_COUNT], payload, publishOptions);
+        }
+        receivedMessages.acquire(BURST_SIZE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void singleMessage() throws InterruptedException {
+        publisher.publish(topics[0], payload, publishOptions);
+        receivedMessages.acquire();
+    }
+}
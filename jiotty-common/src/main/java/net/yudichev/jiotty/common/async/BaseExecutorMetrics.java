@@ -0,0 +1,44 @@
+package net.yudichev.jiotty.common.async;
+
+import net.yudichev.jiotty.common.lang.PublicImmutablesStyle;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+import java.util.Optional;
+
+@Value.Immutable
+@PublicImmutablesStyle
+interface BaseExecutorMetrics {
+    String getThreadNameBase();
+
+    /**
+     * Tasks that are ready to run but have not started yet.
+     */
+    int getQueuedTaskCount();
+
+    /**
+     * Delayed and periodic tasks waiting for their time to come.
+     */
+    int getScheduledTimerCount();
+
+    long getExecutedTaskCount();
+
+    /**
+     * Tasks that took longer than the slow task threshold to execute.
+     */
+    long getSlowTaskCount();
+
+    /**
+     * Time from a task being ready to run (submitted, or its scheduled time arrived) until it started.
+     */
+    LatencyHistogram.Snapshot getWaitTime();
+
+    LatencyHistogram.Snapshot getExecutionTime();
+
+    /**
+     * Description of the task that is executing right now, if any.
+     */
+    Optional<String> getCurrentTask();
+
+    Optional<Duration> getCurrentTaskRunningTime();
+}
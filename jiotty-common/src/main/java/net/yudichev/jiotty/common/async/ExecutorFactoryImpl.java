@@ -1,8 +1,26 @@
 package net.yudichev.jiotty.common.async;
 
+import javax.inject.Inject;
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
 public final class ExecutorFactoryImpl implements ExecutorFactory {
+    private final ExecutorRegistryImpl registry;
+    private final Duration slowTaskThreshold;
+
+    public ExecutorFactoryImpl() {
+        this(new ExecutorRegistryImpl(), ExecutorInstrumentation.DEFAULT_SLOW_TASK_THRESHOLD);
+    }
+
+    @Inject
+    ExecutorFactoryImpl(ExecutorRegistryImpl registry, @ExecutorInstrumentation.SlowTaskThreshold Duration slowTaskThreshold) {
+        this.registry = checkNotNull(registry);
+        this.slowTaskThreshold = checkNotNull(slowTaskThreshold);
+    }
+
     @Override
     public SchedulingExecutor createSingleThreadedSchedulingExecutor(String threadNameBase) {
-        return new SingleThreadedSchedulingExecutor(threadNameBase);
+        return registry.register(new SingleThreadedSchedulingExecutor(threadNameBase, slowTaskThreshold, registry::unregister));
     }
 }
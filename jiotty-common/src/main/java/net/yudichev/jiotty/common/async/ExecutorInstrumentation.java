@@ -0,0 +1,90 @@
+package net.yudichev.jiotty.common.async;
+
+import com.google.inject.BindingAnnotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Task timing of one serial executor. {@link #beforeTask} and {@link #afterTask} must be called by the thread executing the task, one task
+ * at a time; everything else may be called from any thread.
+ */
+final class ExecutorInstrumentation {
+    static final Duration DEFAULT_SLOW_TASK_THRESHOLD = Duration.ofSeconds(5);
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorInstrumentation.class);
+
+    private final String threadNameBase;
+    private final long slowTaskThresholdNanos;
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram executionTime = new LatencyHistogram();
+    private final LongAdder executedTaskCount = new LongAdder();
+    private final LongAdder slowTaskCount = new LongAdder();
+
+    @Nullable
+    private volatile Object currentTask;
+    private volatile long currentTaskStartNanos;
+
+    ExecutorInstrumentation(String threadNameBase, Duration slowTaskThreshold) {
+        this.threadNameBase = checkNotNull(threadNameBase);
+        slowTaskThresholdNanos = slowTaskThreshold.toNanos();
+    }
+
+    /**
+     * @param readyTimeNanos when the task was submitted, or when its scheduled time arrived
+     * @return task start time to pass to {@link #afterTask}
+     */
+    long beforeTask(Object task, long readyTimeNanos) {
+        long startNanos = System.nanoTime();
+        waitTime.record(startNanos - readyTimeNanos);
+        currentTaskStartNanos = startNanos;
+        currentTask = task;
+        return startNanos;
+    }
+
+    void afterTask(Object task, long startNanos) {
+        currentTask = null;
+        long executionNanos = System.nanoTime() - startNanos;
+        executionTime.record(executionNanos);
+        executedTaskCount.increment();
+        if (executionNanos > slowTaskThresholdNanos) {
+            slowTaskCount.increment();
+            logger.warn("[{}] Slow task took {}: {}", threadNameBase, Duration.ofNanos(executionNanos), task);
+        }
+    }
+
+    ExecutorMetrics toMetrics(int queuedTaskCount, int scheduledTimerCount) {
+        Object task = currentTask;
+        long taskStartNanos = currentTaskStartNanos;
+        return ExecutorMetrics.builder()
+                              .setThreadNameBase(threadNameBase)
+                              .setQueuedTaskCount(queuedTaskCount)
+                              .setScheduledTimerCount(scheduledTimerCount)
+                              .setExecutedTaskCount(executedTaskCount.sum())
+                              .setSlowTaskCount(slowTaskCount.sum())
+                              .setWaitTime(waitTime.snapshot())
+                              .setExecutionTime(executionTime.snapshot())
+                              .setCurrentTask(Optional.ofNullable(task).map(Object::toString))
+                              .setCurrentTaskRunningTime(Optional.ofNullable(task)
+                                                                 .map(ignored -> Duration.ofNanos(System.nanoTime() - taskStartNanos)))
+                              .build();
+    }
+
+    @BindingAnnotation
+    @Target({FIELD, PARAMETER, METHOD})
+    @Retention(RUNTIME)
+    @interface SlowTaskThreshold {
+    }
+}
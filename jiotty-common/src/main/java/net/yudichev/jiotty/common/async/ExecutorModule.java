@@ -1,15 +1,105 @@
 package net.yudichev.jiotty.common.async;
 
-import com.google.inject.assistedinject.FactoryModuleBuilder;
 import net.yudichev.jiotty.common.inject.BaseLifecycleComponentModule;
 import net.yudichev.jiotty.common.inject.ExposedKeyModule;
+import net.yudichev.jiotty.common.lang.TypedBuilder;
 
+import javax.inject.Singleton;
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * With a shared worker pool or virtual threads, the factory is a lifecycle component that releases its threads when stopped; install this
+ * module before the ones whose components use it, so that it stops after them.
+ */
 public final class ExecutorModule extends BaseLifecycleComponentModule implements ExposedKeyModule<ExecutorFactory> {
+    private final ThreadingMode threadingMode;
+    private final int sharedPoolWorkerThreadCount;
+    private final Duration slowTaskThreshold;
+
+    public ExecutorModule() {
+        this(ThreadingMode.DEDICATED_THREAD, 0, ExecutorInstrumentation.DEFAULT_SLOW_TASK_THRESHOLD);
+    }
+
+    private ExecutorModule(ThreadingMode threadingMode, int sharedPoolWorkerThreadCount, Duration slowTaskThreshold) {
+        this.threadingMode = checkNotNull(threadingMode);
+        this.sharedPoolWorkerThreadCount = sharedPoolWorkerThreadCount;
+        this.slowTaskThreshold = checkNotNull(slowTaskThreshold);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
     @Override
     protected void configure() {
-        install(new FactoryModuleBuilder()
-                .implement(SchedulingExecutor.class, SingleThreadedSchedulingExecutor.class)
-                .build(getExposedKey()));
+        bind(ExecutorRegistryImpl.class).in(Singleton.class);
+        bind(ExecutorRegistry.class).to(ExecutorRegistryImpl.class);
+        expose(ExecutorRegistry.class);
+        bind(Duration.class).annotatedWith(ExecutorInstrumentation.SlowTaskThreshold.class).toInstance(slowTaskThreshold);
+
+        switch (threadingMode) {
+            case DEDICATED_THREAD -> bind(getExposedKey()).to(ExecutorFactoryImpl.class).in(Singleton.class);
+            case SHARED_POOL -> {
+                bindConstant().annotatedWith(SharedPoolExecutorFactory.WorkerThreadCount.class).to(sharedPoolWorkerThreadCount);
+                bind(getExposedKey()).to(registerLifecycleComponent(SharedPoolExecutorFactory.class));
+            }
+            case VIRTUAL_THREADS -> bind(getExposedKey()).to(registerLifecycleComponent(VirtualThreadExecutorFactory.class));
+        }
         expose(getExposedKey());
     }
+
+    private enum ThreadingMode {
+        DEDICATED_THREAD,
+        SHARED_POOL,
+        VIRTUAL_THREADS,
+    }
+
+    public static final class Builder implements TypedBuilder<ExposedKeyModule<ExecutorFactory>> {
+        private ThreadingMode threadingMode = ThreadingMode.DEDICATED_THREAD;
+        private int sharedPoolWorkerThreadCount;
+        private Duration slowTaskThreshold = ExecutorInstrumentation.DEFAULT_SLOW_TASK_THRESHOLD;
+
+        private Builder() {
+        }
+
+        /**
+         * Instead of a dedicated thread per executor, multiplex all executors onto a shared pool of the given number of worker threads.
+         *
+         * @see SharedPoolExecutorFactory
+         */
+        public Builder withSharedWorkerPool(int workerThreadCount) {
+            checkArgument(workerThreadCount > 0, "workerThreadCount must be positive: %s", workerThreadCount);
+            threadingMode = ThreadingMode.SHARED_POOL;
+            sharedPoolWorkerThreadCount = workerThreadCount;
+            return this;
+        }
+
+        /**
+         * Instead of a dedicated thread per executor, run the tasks of all executors on virtual threads; best for components that block
+         * inside their tasks.
+         *
+         * @see VirtualThreadExecutorFactory
+         */
+        public Builder withVirtualThreads() {
+            threadingMode = ThreadingMode.VIRTUAL_THREADS;
+            return this;
+        }
+
+        /**
+         * Tasks that execute for longer than this are logged as slow, along with their origin. Default is 5 seconds.
+         */
+        public Builder withSlowTaskThreshold(Duration slowTaskThreshold) {
+            checkArgument(!slowTaskThreshold.isNegative(), "slowTaskThreshold must not be negative: %s", slowTaskThreshold);
+            this.slowTaskThreshold = slowTaskThreshold;
+            return this;
+        }
+
+        @Override
+        public ExposedKeyModule<ExecutorFactory> build() {
+            return new ExecutorModule(threadingMode, sharedPoolWorkerThreadCount, slowTaskThreshold);
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package net.yudichev.jiotty.common.async;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * All live (not yet closed) executors created by the {@link ExecutorFactory} bound by {@link ExecutorModule}.
+ */
+public interface ExecutorRegistry {
+    /**
+     * @return metrics of all live executors, ordered by thread name base
+     */
+    List<ExecutorMetrics> getMetrics();
+
+    /**
+     * @return human-readable dump of {@link #getMetrics()}, one executor per line
+     */
+    default String dump() {
+        return getMetrics().stream()
+                           .map(metrics -> String.format("%s: queued=%s, timers=%s, executed=%s, slow=%s, wait=[%s], execution=[%s]%s",
+                                                         metrics.getThreadNameBase(),
+                                                         metrics.getQueuedTaskCount(),
+                                                         metrics.getScheduledTimerCount(),
+                                                         metrics.getExecutedTaskCount(),
+                                                         metrics.getSlowTaskCount(),
+                                                         metrics.getWaitTime(),
+                                                         metrics.getExecutionTime(),
+                                                         metrics.getCurrentTask()
+                                                                .map(task -> ", running for " + metrics.getCurrentTaskRunningTime().orElseThrow()
+                                                                             + ": " + task)
+                                                                .orElse("")))
+                           .collect(joining("\n"));
+    }
+}
@@ -0,0 +1,35 @@
+package net.yudichev.jiotty.common.async;
+
+import com.google.common.collect.Sets;
+
+import javax.inject.Inject;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+final class ExecutorRegistryImpl implements ExecutorRegistry {
+    private final Set<InstrumentedSchedulingExecutor> executors = Sets.newConcurrentHashSet();
+
+    @Inject
+    ExecutorRegistryImpl() {
+    }
+
+    @Override
+    public List<ExecutorMetrics> getMetrics() {
+        return executors.stream()
+                        .map(InstrumentedSchedulingExecutor::getMetrics)
+                        .sorted(Comparator.comparing(ExecutorMetrics::getThreadNameBase))
+                        .collect(toImmutableList());
+    }
+
+    <T extends InstrumentedSchedulingExecutor> T register(T executor) {
+        executors.add(executor);
+        return executor;
+    }
+
+    void unregister(InstrumentedSchedulingExecutor executor) {
+        executors.remove(executor);
+    }
+}
@@ -0,0 +1,223 @@
+package net.yudichev.jiotty.common.async;
+
+import net.yudichev.jiotty.common.lang.Closeable;
+import net.yudichev.jiotty.common.lang.Runnables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A single-threaded hashed timer wheel: O(1) to add and cancel a timeout, with a precision of one tick.
+ * Timeout tasks run on the timer thread and must therefore only hand the work over to another executor.
+ */
+final class HashedWheelTimer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+    private static final int MAX_TIMEOUTS_TRANSFERRED_PER_TICK = 100_000;
+
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long tickDurationNanos;
+    private final long startTimeNanos;
+    private final Thread workerThread;
+
+    HashedWheelTimer(String threadName, Duration tickDuration, int ticksPerWheel) {
+        checkArgument(!tickDuration.isNegative() && !tickDuration.isZero(), "tickDuration must be positive: %s", tickDuration);
+        checkArgument(ticksPerWheel > 0 && Integer.bitCount(ticksPerWheel) == 1, "ticksPerWheel must be a positive power of 2: %s", ticksPerWheel);
+        tickDurationNanos = tickDuration.toNanos();
+        wheel = new Bucket[ticksPerWheel];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = ticksPerWheel - 1;
+        startTimeNanos = System.nanoTime();
+        workerThread = new Thread(this::runWorker, checkNotNull(threadName));
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    public Closeable newTimeout(Duration delay, Runnable task) {
+        checkState(!closed.get(), "timer is closed");
+        long delayNanos = Math.max(0, delay.toNanos());
+        long deadline = System.nanoTime() - startTimeNanos + delayNanos;
+        // guard against overflow for very long delays
+        if (delayNanos > 0 && deadline < 0) {
+            deadline = Long.MAX_VALUE;
+        }
+        var timeout = new WheelTimeout(deadline, checkNotNull(task));
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            LockSupport.unpark(workerThread);
+        }
+    }
+
+    private void runWorker() {
+        long tick = 0;
+        while (!closed.get()) {
+            if (waitForNextTick(tick)) {
+                processCancelledTimeouts();
+                transferPendingTimeouts(tick);
+                wheel[(int) (tick & mask)].expireTimeouts();
+                tick++;
+            }
+        }
+        logger.debug("Timer thread {} stopped", workerThread.getName());
+    }
+
+    /**
+     * @return {@code false} if the timer was closed while waiting
+     */
+    private boolean waitForNextTick(long tick) {
+        long deadline = tickDurationNanos * (tick + 1);
+        while (true) {
+            long sleepNanos = deadline - (System.nanoTime() - startTimeNanos);
+            if (sleepNanos <= 0) {
+                return true;
+            }
+            if (closed.get()) {
+                return false;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPendingTimeouts(long tick) {
+        for (int i = 0; i < MAX_TIMEOUTS_TRANSFERRED_PER_TICK; i++) {
+            WheelTimeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.state.get() == STATE_CANCELLED) {
+                continue;
+            }
+            long calculatedTick = timeout.deadline / tickDurationNanos;
+            timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+            // if the deadline is already in the past, put it into the current bucket
+            long targetTick = Math.max(calculatedTick, tick);
+            wheel[(int) (targetTick & mask)].add(timeout);
+        }
+    }
+
+    private final class WheelTimeout implements Closeable {
+        private final long deadline;
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+        // the following are only accessed by the worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private WheelTimeout next;
+        private WheelTimeout prev;
+
+        WheelTimeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        @Override
+        public void close() {
+            if (state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+                cancelledTimeouts.add(this);
+            }
+        }
+
+        void expire() {
+            if (state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) {
+                Runnables.guarded(logger, "expiring timeout", task).run();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "WheelTimeout{deadline=" + deadline + ", state=" + state.get() + ", task=" + task + '}';
+        }
+    }
+
+    /**
+     * Doubly-linked list of timeouts; only accessed by the worker thread.
+     */
+    private static final class Bucket {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expireTimeouts() {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    // by construction, a timeout in its last round is due by the end of this tick
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.state.get() == STATE_CANCELLED) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            WheelTimeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package net.yudichev.jiotty.common.async;
+
+public interface InstrumentedSchedulingExecutor extends SchedulingExecutor {
+    ExecutorMetrics getMetrics();
+}
@@ -0,0 +1,70 @@
+package net.yudichev.jiotty.common.async;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Thread safe, allocation free histogram of durations with power-of-two nanosecond buckets, so percentiles are accurate to within a factor
+ * of two - enough to tell a 1ms task from a 1s one.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKET_COUNT = Long.SIZE + 1;
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        bucketCounts.incrementAndGet(bucketIndex(value));
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long totalCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = bucketCounts.get(i);
+            totalCount += counts[i];
+        }
+        long max = maxNanos.get();
+        return new Snapshot(totalCount,
+                            percentile(counts, totalCount, max, 0.5),
+                            percentile(counts, totalCount, max, 0.9),
+                            percentile(counts, totalCount, max, 0.99),
+                            Duration.ofNanos(max));
+    }
+
+    private static int bucketIndex(long nanos) {
+        return Long.SIZE - Long.numberOfLeadingZeros(nanos);
+    }
+
+    private static Duration percentile(long[] counts, long totalCount, long maxNanos, double percentile) {
+        checkArgument(percentile > 0 && percentile <= 1, "percentile must be in (0, 1]: %s", percentile);
+        if (totalCount == 0) {
+            return Duration.ZERO;
+        }
+        long targetCount = (long) Math.ceil(totalCount * percentile);
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount >= targetCount) {
+                // upper bound of the bucket, but never more than the actual max
+                long bucketUpperBound = i == 0 ? 0 : i >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                return Duration.ofNanos(Math.min(bucketUpperBound, maxNanos));
+            }
+        }
+        return Duration.ofNanos(maxNanos);
+    }
+
+    public record Snapshot(long count, Duration p50, Duration p90, Duration p99, Duration max) {
+        @Override
+        public String toString() {
+            return "count=" + count + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + ", max=" + max;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.yudichev.jiotty.common.async;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.BindingAnnotation;
+import net.yudichev.jiotty.common.inject.BaseLifecycleComponent;
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.yudichev.jiotty.common.lang.Locks.inLock;
+
+/**
+ * Creates executors that do not own threads: each executor is a serial lane multiplexed onto a fixed pool of worker threads, and all
+ * delayed tasks share one timer wheel thread. Suitable for many mostly idle components; tasks that block for long periods occupy a
+ * worker thread while blocked, so size the pool accordingly.
+ * <p>
+ * The threads are created on first use and released on {@link #close()} or {@link #stop()}; executors created afterwards get new ones.
+ */
+public final class SharedPoolExecutorFactory extends BaseLifecycleComponent implements ExecutorFactory, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SharedPoolExecutorFactory.class);
+
+    private static final Duration TIMER_TICK_DURATION = Duration.ofMillis(10);
+    private static final int TIMER_TICKS_PER_WHEEL = 512;
+
+    private final int workerThreadCount;
+    private final ExecutorRegistryImpl registry;
+    private final Duration slowTaskThreshold;
+    private final Lock lock = new ReentrantLock();
+    // guarded by lock
+    @Nullable
+    private ExecutorService workerPool;
+    @Nullable
+    private HashedWheelTimer timer;
+
+    public SharedPoolExecutorFactory(int workerThreadCount) {
+        this(workerThreadCount, new ExecutorRegistryImpl(), ExecutorInstrumentation.DEFAULT_SLOW_TASK_THRESHOLD);
+    }
+
+    @Inject
+    SharedPoolExecutorFactory(@WorkerThreadCount int workerThreadCount,
+                              ExecutorRegistryImpl registry,
+                              @ExecutorInstrumentation.SlowTaskThreshold Duration slowTaskThreshold) {
+        this.registry = checkNotNull(registry);
+        this.slowTaskThreshold = checkNotNull(slowTaskThreshold);
+        checkArgument(workerThreadCount > 0, "workerThreadCount must be positive: %s", workerThreadCount);
+        this.workerThreadCount = workerThreadCount;
+    }
+
+    @Override
+    public SchedulingExecutor createSingleThreadedSchedulingExecutor(String threadNameBase) {
+        return inLock(lock, () -> {
+            if (workerPool == null) {
+                workerPool = Executors.newFixedThreadPool(workerThreadCount, new ThreadFactoryBuilder()
+                        .setNameFormat("shared-executor-%s")
+                        .setDaemon(true)
+                        .build());
+                timer = new HashedWheelTimer("shared-executor-timer", TIMER_TICK_DURATION, TIMER_TICKS_PER_WHEEL);
+                logger.info("Created shared executor pool with {} worker threads", workerThreadCount);
+            }
+            return registry.register(new SharedPoolSchedulingExecutor(workerPool, timer, threadNameBase, slowTaskThreshold, registry::unregister));
+        });
+    }
+
+    @Override
+    public void close() {
+        ExecutorService workerPoolToClose;
+        HashedWheelTimer timerToClose;
+        lock.lock();
+        try {
+            workerPoolToClose = workerPool;
+            timerToClose = timer;
+            workerPool = null;
+            timer = null;
+        } finally {
+            lock.unlock();
+        }
+        if (workerPoolToClose != null) {
+            timerToClose.close();
+            if (!MoreExecutors.shutdownAndAwaitTermination(workerPoolToClose, 10, SECONDS)) {
+                logger.warn("Was not able to gracefully stop shared executor pool in 10 seconds");
+            }
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        close();
+    }
+
+    @BindingAnnotation
+    @Target({FIELD, PARAMETER, METHOD})
+    @Retention(RUNTIME)
+    @interface WorkerThreadCount {
+    }
+}
@@ -0,0 +1,380 @@
+package net.yudichev.jiotty.common.async;
+
+import net.yudichev.jiotty.common.lang.BaseIdempotentCloseable;
+import net.yudichev.jiotty.common.lang.Closeable;
+import net.yudichev.jiotty.common.lang.Runnables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
+
+/**
+ * A "lane" on a shared executor (a pool of platform threads or a virtual thread per task): tasks submitted to the same lane are executed
+ * serially and in order, but lanes do not own threads. Delayed tasks are timed by a shared {@link HashedWheelTimer}.
+ */
+final class SharedPoolSchedulingExecutor implements InstrumentedSchedulingExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(SharedPoolSchedulingExecutor.class);
+
+    /**
+     * Maximum number of tasks a lane executes before yielding the worker thread to other lanes.
+     */
+    private static final int MAX_TASKS_PER_DRAIN = 64;
+
+    private final Queue<QueuedTask> taskQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedTaskCount = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Object scheduleHandlesLock = new Object();
+    private final Executor workerPool;
+    private final HashedWheelTimer timer;
+    private final String threadNameBase;
+    private final ExecutorInstrumentation instrumentation;
+    private final Consumer<? super SharedPoolSchedulingExecutor> closeListener;
+    private final Duration closeGracePeriod;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Object drainingThreadLock = new Object();
+
+    // written under drainingThreadLock, so that close() never interrupts a pool thread that has moved on to another lane
+    @Nullable
+    private volatile Thread drainingThread;
+
+    // guarded by scheduleHandlesLock: intrusive list of handles that have not fired (one-shot) or been cancelled yet
+    @Nullable
+    private ScheduledHandle firstScheduleHandle;
+    private int scheduleHandleCount;
+
+    SharedPoolSchedulingExecutor(Executor workerPool,
+                                 HashedWheelTimer timer,
+                                 String threadNameBase,
+                                 Duration slowTaskThreshold,
+                                 Consumer<? super SharedPoolSchedulingExecutor> closeListener) {
+        this(workerPool, timer, threadNameBase, slowTaskThreshold, closeListener, SingleThreadedSchedulingExecutor.DEFAULT_CLOSE_GRACE_PERIOD);
+    }
+
+    SharedPoolSchedulingExecutor(Executor workerPool,
+                                 HashedWheelTimer timer,
+                                 String threadNameBase,
+                                 Duration slowTaskThreshold,
+                                 Consumer<? super SharedPoolSchedulingExecutor> closeListener,
+                                 Duration closeGracePeriod) {
+        this.workerPool = checkNotNull(workerPool);
+        this.timer = checkNotNull(timer);
+        this.threadNameBase = checkNotNull(threadNameBase);
+        instrumentation = new ExecutorInstrumentation(threadNameBase, slowTaskThreshold);
+        this.closeListener = checkNotNull(closeListener);
+        this.closeGracePeriod = checkNotNull(closeGracePeriod);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Callable<? extends T> task) {
+        var submittedTask = new SubmittedTask<T>(task);
+        enqueue(submittedTask);
+        return submittedTask.resultFuture;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        enqueue(guard("task", command));
+    }
+
+    @Override
+    public Closeable schedule(Duration delay, Runnable command) {
+        checkNotClosed();
+        var scheduledHandle = new ScheduledHandle(guard("scheduled task", command), 0);
+        link(scheduledHandle);
+        scheduledHandle.arm(delay);
+        return scheduledHandle;
+    }
+
+    @Override
+    public Closeable scheduleAtFixedRate(Duration initialDelay, Duration period, Runnable command) {
+        checkNotClosed();
+        var scheduledHandle = new ScheduledHandle(guard("scheduled task", command), period.toNanos());
+        link(scheduledHandle);
+        scheduledHandle.arm(initialDelay);
+        return scheduledHandle;
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        Closeable.forCloseables(unlinkAll()).close();
+        closeListener.accept(this);
+
+        // let the tasks that are already queued complete, unless closing from within the lane itself
+        var terminatedLatch = new CountDownLatch(1);
+        doEnqueue(terminatedLatch::countDown);
+        if (Thread.currentThread() != drainingThread) {
+            asUnchecked(() -> {
+                if (!terminatedLatch.await(closeGracePeriod.toMillis(), MILLISECONDS)) {
+                    // as SingleThreadedSchedulingExecutor: drop the queued tasks and interrupt the running one
+                    logger.debug("Executor '{}' did not stop in {}, interrupting", threadNameBase, closeGracePeriod);
+                    discardQueuedTasks();
+                    var interruptedLatch = new CountDownLatch(1);
+                    doEnqueue(interruptedLatch::countDown);
+                    synchronized (drainingThreadLock) {
+                        Thread thread = drainingThread;
+                        if (thread != null) {
+                            thread.interrupt();
+                        }
+                    }
+                    if (!interruptedLatch.await(closeGracePeriod.toMillis(), MILLISECONDS)) {
+                        logger.warn("Was not able to stop executor '{}' in {}", threadNameBase, closeGracePeriod.multipliedBy(2));
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public ExecutorMetrics getMetrics() {
+        int scheduledTimerCount;
+        synchronized (scheduleHandlesLock) {
+            scheduledTimerCount = scheduleHandleCount;
+        }
+        return instrumentation.toMetrics(queuedTaskCount.get(), scheduledTimerCount);
+    }
+
+    @Override
+    public String toString() {
+        return "SharedPoolSchedulingExecutor{" + threadNameBase + '}';
+    }
+
+    private void enqueue(Runnable task) {
+        checkNotClosed();
+        doEnqueue(task);
+    }
+
+    private void doEnqueue(Runnable task) {
+        queuedTaskCount.incrementAndGet();
+        taskQueue.add(new QueuedTask(task, System.nanoTime()));
+        scheduleDrainIfNeeded();
+    }
+
+    private void discardQueuedTasks() {
+        QueuedTask queuedTask;
+        while ((queuedTask = taskQueue.poll()) != null) {
+            queuedTaskCount.decrementAndGet();
+            if (queuedTask.task() instanceof SubmittedTask<?> submittedTask) {
+                submittedTask.resultFuture.cancel(false);
+            }
+        }
+    }
+
+    private void scheduleDrainIfNeeded() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            workerPool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        Thread thread = Thread.currentThread();
+        String workerThreadName = thread.getName();
+        thread.setName(threadNameBase + '/' + workerThreadName);
+        synchronized (drainingThreadLock) {
+            drainingThread = thread;
+        }
+        try {
+            for (int i = 0; i < MAX_TASKS_PER_DRAIN; i++) {
+                QueuedTask queuedTask = taskQueue.poll();
+                if (queuedTask == null) {
+                    break;
+                }
+                queuedTaskCount.decrementAndGet();
+                Runnable task = queuedTask.task();
+                long startNanos = instrumentation.beforeTask(task, queuedTask.enqueueTimeNanos());
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    logger.error("Unhandled failure executing task {}", task, e);
+                }
+                instrumentation.afterTask(task, startNanos);
+            }
+        } finally {
+            synchronized (drainingThreadLock) {
+                drainingThread = null;
+            }
+            // do not leak an interrupt made by close() to the tasks of other lanes
+            Thread.interrupted();
+            thread.setName(workerThreadName);
+            drainScheduled.set(false);
+            // a task may have been added after the last poll but before the flag was reset
+            if (!taskQueue.isEmpty()) {
+                scheduleDrainIfNeeded();
+            }
+        }
+    }
+
+    private void link(ScheduledHandle handle) {
+        synchronized (scheduleHandlesLock) {
+            // re-checked under the lock so that close() either sees this handle or this method sees the executor closed
+            checkNotClosed();
+            handle.next = firstScheduleHandle;
+            if (firstScheduleHandle != null) {
+                firstScheduleHandle.prev = handle;
+            }
+            firstScheduleHandle = handle;
+            handle.linked = true;
+            scheduleHandleCount++;
+        }
+    }
+
+    private void unlink(ScheduledHandle handle) {
+        synchronized (scheduleHandlesLock) {
+            if (!handle.linked) {
+                return;
+            }
+            if (handle.prev == null) {
+                firstScheduleHandle = handle.next;
+            } else {
+                handle.prev.next = handle.next;
+            }
+            if (handle.next != null) {
+                handle.next.prev = handle.prev;
+            }
+            handle.prev = null;
+            handle.next = null;
+            handle.linked = false;
+            scheduleHandleCount--;
+        }
+    }
+
+    private List<ScheduledHandle> unlinkAll() {
+        synchronized (scheduleHandlesLock) {
+            List<ScheduledHandle> handles = new ArrayList<>(scheduleHandleCount);
+            ScheduledHandle handle = firstScheduleHandle;
+            while (handle != null) {
+                ScheduledHandle next = handle.next;
+                handle.prev = null;
+                handle.next = null;
+                handle.linked = false;
+                handles.add(handle);
+                handle = next;
+            }
+            firstScheduleHandle = null;
+            scheduleHandleCount = 0;
+            return handles;
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed.get()) {
+            throw new RejectedExecutionException("Executor '" + threadNameBase + "' is closed");
+        }
+    }
+
+    private static Runnable guard(String task, Runnable command) {
+        return Runnables.guarded(logger, task, command);
+    }
+
+    private record QueuedTask(Runnable task, long enqueueTimeNanos) {
+    }
+
+    private static final class SubmittedTask<T> implements Runnable {
+        private final Callable<? extends T> task;
+        private final CompletableFuture<T> resultFuture = new CompletableFuture<>();
+
+        SubmittedTask(Callable<? extends T> task) {
+            this.task = checkNotNull(task);
+        }
+
+        @Override
+        public void run() {
+            try {
+                resultFuture.complete(task.call());
+            } catch (Exception e) {
+                resultFuture.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SubmittedTask{" + task + '}';
+        }
+    }
+
+    private final class ScheduledHandle extends BaseIdempotentCloseable implements Runnable {
+        private final Runnable command;
+        private final long periodNanos;
+        private long nextDeadlineNanos;
+        @Nullable
+        private volatile Closeable timeout;
+
+        // guarded by scheduleHandlesLock
+        @Nullable
+        private ScheduledHandle prev;
+        @Nullable
+        private ScheduledHandle next;
+        private boolean linked;
+
+        ScheduledHandle(Runnable command, long periodNanos) {
+            this.command = checkNotNull(command);
+            this.periodNanos = periodNanos;
+        }
+
+        void arm(Duration delay) {
+            nextDeadlineNanos = System.nanoTime() + delay.toNanos();
+            rearm(delay);
+        }
+
+        @Override
+        protected void doClose() {
+            Closeable.closeIfNotNull(timeout);
+            unlink(this);
+        }
+
+        @Override
+        public String toString() {
+            return "ScheduledHandle{" + command + '}';
+        }
+
+        private void rearm(Duration delay) {
+            Closeable newTimeout = timer.newTimeout(delay, this::onTimeout);
+            timeout = newTimeout;
+            // close() may have been called concurrently and missed the new timeout
+            if (isClosed()) {
+                newTimeout.close();
+            }
+        }
+
+        private void onTimeout() {
+            if (!isClosed() && !closed.get()) {
+                doEnqueue(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isClosed()) {
+                return;
+            }
+            command.run();
+            if (periodNanos > 0) {
+                nextDeadlineNanos += periodNanos;
+                if (!isClosed()) {
+                    rearm(Duration.ofNanos(Math.max(0, nextDeadlineNanos - System.nanoTime())));
+                }
+            } else {
+                close();
+            }
+        }
+    }
+}
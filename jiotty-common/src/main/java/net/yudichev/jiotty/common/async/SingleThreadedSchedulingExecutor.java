@@ -1,107 +1,470 @@
 package net.yudichev.jiotty.common.async;
 
-import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
-import net.yudichev.jiotty.common.lang.BaseIdempotentCloseable;
 import net.yudichev.jiotty.common.lang.Closeable;
-import net.yudichev.jiotty.common.lang.Runnables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.time.Duration;
-import java.util.Set;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
 
-public final class SingleThreadedSchedulingExecutor implements SchedulingExecutor {
+/**
+ * Executes all tasks serially on one dedicated daemon thread.
+ * <p>
+ * The hot paths are designed not to allocate beyond what the caller gets back: immediate tasks are stored directly in an array-backed
+ * ring, {@link #submit(Callable)} allocates a single object that is both the queued task and the returned future, and
+ * {@link #schedule(Duration, Runnable)} allocates a single object that is both the timer heap entry and the returned handle.
+ */
+public final class SingleThreadedSchedulingExecutor implements InstrumentedSchedulingExecutor {
     private static final Logger logger = LoggerFactory.getLogger(SingleThreadedSchedulingExecutor.class);
 
-    private final Set<Closeable> scheduleHandles = Sets.newConcurrentHashSet();
-    private final ScheduledExecutorService executor;
+    private static final int INITIAL_CAPACITY = 16;
+    static final Duration DEFAULT_CLOSE_GRACE_PERIOD = Duration.ofSeconds(5);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
     private final String threadNameBase;
+    private final ExecutorInstrumentation instrumentation;
+    private final Consumer<? super SingleThreadedSchedulingExecutor> closeListener;
+    private final Duration closeGracePeriod;
+    private final Thread workerThread;
+
+    // guarded by lock
+    private final TaskRing immediateTasks = new TaskRing();
+    private ScheduledTask[] timerHeap = new ScheduledTask[INITIAL_CAPACITY];
+    private int timerHeapSize;
+    private long timerSequence;
+    private boolean closed;
+
+    // accessed by the worker thread only
+    private long takenTaskReadyTimeNanos;
 
     @Inject
     public SingleThreadedSchedulingExecutor(@Assisted String threadNameBase) {
-        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
-                                                                      .setNameFormat(threadNameBase + "-%s")
-                                                                      .setDaemon(true)
-                                                                      .build());
-        this.threadNameBase = threadNameBase;
+        this(threadNameBase, ExecutorInstrumentation.DEFAULT_SLOW_TASK_THRESHOLD, executor -> {});
+    }
+
+    SingleThreadedSchedulingExecutor(String threadNameBase,
+                                     Duration slowTaskThreshold,
+                                     Consumer<? super SingleThreadedSchedulingExecutor> closeListener) {
+        this(threadNameBase, slowTaskThreshold, closeListener, DEFAULT_CLOSE_GRACE_PERIOD);
+    }
+
+    SingleThreadedSchedulingExecutor(String threadNameBase,
+                                     Duration slowTaskThreshold,
+                                     Consumer<? super SingleThreadedSchedulingExecutor> closeListener,
+                                     Duration closeGracePeriod) {
+        this.threadNameBase = checkNotNull(threadNameBase);
+        instrumentation = new ExecutorInstrumentation(threadNameBase, slowTaskThreshold);
+        this.closeListener = checkNotNull(closeListener);
+        this.closeGracePeriod = checkNotNull(closeGracePeriod);
+        workerThread = new ThreadFactoryBuilder()
+                .setNameFormat(threadNameBase + "-%s")
+                .setDaemon(true)
+                .build()
+                .newThread(this::runWorker);
+        workerThread.start();
     }
 
     @Override
     public <T> CompletableFuture<T> submit(Callable<? extends T> task) {
-        var resultFuture = new CompletableFuture<T>();
-        executor.submit(() -> {
-            try {
-                resultFuture.complete(task.call());
-            } catch (Exception e) {
-                resultFuture.completeExceptionally(e);
-            }
-        });
-        return resultFuture;
+        var submittedTask = new SubmittedTask<T>(checkNotNull(task), null);
+        enqueue(submittedTask);
+        return submittedTask;
+    }
+
+    @Override
+    public CompletableFuture<Void> submit(Runnable command) {
+        var submittedTask = new SubmittedTask<Void>(null, checkNotNull(command));
+        enqueue(submittedTask);
+        return submittedTask;
     }
 
     @Override
     public void execute(Runnable command) {
-        executor.execute(guard("task", command));
+        enqueue(checkNotNull(command));
     }
 
     @Override
     public Closeable schedule(Duration delay, Runnable command) {
-        Closeable scheduledHandle = new ScheduledHandle(executor.schedule(
-                guard("scheduled task", command), delay.toNanos(), NANOSECONDS));
-        scheduleHandles.add(scheduledHandle);
-        return scheduledHandle;
+        return scheduleTask(new ScheduledTask(command, System.nanoTime() + delay.toNanos(), 0));
     }
 
     @Override
     public Closeable scheduleAtFixedRate(Duration initialDelay, Duration period, Runnable command) {
-        Closeable scheduledHandle = new ScheduledHandle(
-                executor.scheduleAtFixedRate(guard("scheduled task", command), initialDelay.toNanos(), period.toNanos(), NANOSECONDS));
-        scheduleHandles.add(scheduledHandle);
-        return scheduledHandle;
+        return scheduleTask(new ScheduledTask(command, System.nanoTime() + initialDelay.toNanos(), period.toNanos()));
     }
 
     @Override
     public void close() {
-        Closeable.forCloseables(scheduleHandles).close();
-        if (!MoreExecutors.shutdownAndAwaitTermination(executor, 10, SECONDS)) {
-            logger.warn("Was not able to gracefully stop executor '{}' in 10 seconds", threadNameBase);
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = 0; i < timerHeapSize; i++) {
+                timerHeap[i].heapIndex = -1;
+                timerHeap[i].cancelled = true;
+                timerHeap[i] = null;
+            }
+            timerHeapSize = 0;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        closeListener.accept(this);
+        // let the tasks that are already queued complete, unless closing from within the executor itself
+        if (Thread.currentThread() != workerThread) {
+            asUnchecked(() -> {
+                workerThread.join(closeGracePeriod.toMillis());
+                if (workerThread.isAlive()) {
+                    // as ExecutorService.shutdownNow(): drop the queued tasks and interrupt the running one
+                    logger.debug("Executor '{}' did not stop in {}, interrupting", threadNameBase, closeGracePeriod);
+                    discardQueuedTasks();
+                    workerThread.interrupt();
+                    workerThread.join(closeGracePeriod.toMillis());
+                    if (workerThread.isAlive()) {
+                        logger.warn("Was not able to stop executor '{}' in {}", threadNameBase, closeGracePeriod.multipliedBy(2));
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public ExecutorMetrics getMetrics() {
+        int queuedTaskCount;
+        int scheduledTimerCount;
+        lock.lock();
+        try {
+            queuedTaskCount = immediateTasks.size();
+            scheduledTimerCount = timerHeapSize;
+        } finally {
+            lock.unlock();
+        }
+        return instrumentation.toMetrics(queuedTaskCount, scheduledTimerCount);
+    }
+
+    @Override
+    public String toString() {
+        return "SingleThreadedSchedulingExecutor{" + threadNameBase + '}';
+    }
+
+    private void enqueue(Runnable task) {
+        lock.lock();
+        try {
+            checkNotClosed();
+            immediateTasks.add(task, System.nanoTime());
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Closeable scheduleTask(ScheduledTask task) {
+        lock.lock();
+        try {
+            checkNotClosed();
+            heapAdd(task);
+            if (task.heapIndex == 0) {
+                workAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return task;
+    }
+
+    private void discardQueuedTasks() {
+        lock.lock();
+        try {
+            while (!immediateTasks.isEmpty()) {
+                if (immediateTasks.poll() instanceof SubmittedTask<?> submittedTask) {
+                    submittedTask.cancel(false);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new RejectedExecutionException("Executor '" + threadNameBase + "' is closed");
+        }
+    }
+
+    private void runWorker() {
+        Runnable task;
+        while ((task = takeTask()) != null) {
+            long startNanos = instrumentation.beforeTask(task, takenTaskReadyTimeNanos);
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.error("Failed while {}", task instanceof ScheduledTask ? "scheduled task" : "task", e);
+            }
+            instrumentation.afterTask(task, startNanos);
+            if (task instanceof ScheduledTask scheduledTask && scheduledTask.periodNanos > 0) {
+                reschedule(scheduledTask);
+            }
+        }
+    }
+
+    /**
+     * @return next task to run, or {@code null} if the executor is closed and all immediate tasks have been run
+     */
+    private Runnable takeTask() {
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                ScheduledTask firstTimer = timerHeapSize == 0 ? null : timerHeap[0];
+                boolean timerDue = firstTimer != null && firstTimer.triggerTimeNanos - now <= 0;
+                // among due tasks, preserve the order in which they became due
+                if (timerDue && (immediateTasks.isEmpty() || firstTimer.triggerTimeNanos - immediateTasks.peekEnqueueTimeNanos() <= 0)) {
+                    heapRemoveAt(0);
+                    takenTaskReadyTimeNanos = firstTimer.triggerTimeNanos;
+                    return firstTimer;
+                }
+                if (!immediateTasks.isEmpty()) {
+                    takenTaskReadyTimeNanos = immediateTasks.peekEnqueueTimeNanos();
+                    return immediateTasks.poll();
+                }
+                if (closed) {
+                    return null;
+                }
+                try {
+                    if (firstTimer == null) {
+                        workAvailable.await();
+                    } else {
+                        workAvailable.awaitNanos(firstTimer.triggerTimeNanos - now);
+                    }
+                } catch (InterruptedException e) {
+                    logger.debug("Executor '{}' worker thread interrupted, ignoring", threadNameBase);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reschedule(ScheduledTask task) {
+        lock.lock();
+        try {
+            if (!task.cancelled && !closed) {
+                task.triggerTimeNanos += task.periodNanos;
+                heapAdd(task);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void cancel(ScheduledTask task) {
+        lock.lock();
+        try {
+            task.cancelled = true;
+            if (task.heapIndex >= 0) {
+                heapRemoveAt(task.heapIndex);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void heapAdd(ScheduledTask task) {
+        if (timerHeapSize == timerHeap.length) {
+            timerHeap = Arrays.copyOf(timerHeap, timerHeapSize * 2);
+        }
+        task.sequence = timerSequence++;
+        siftUp(timerHeapSize++, task);
+    }
+
+    private void heapRemoveAt(int index) {
+        ScheduledTask removed = timerHeap[index];
+        removed.heapIndex = -1;
+        int lastIndex = --timerHeapSize;
+        ScheduledTask last = timerHeap[lastIndex];
+        timerHeap[lastIndex] = null;
+        if (index != lastIndex) {
+            siftDown(index, last);
+            if (timerHeap[index] == last) {
+                siftUp(index, last);
+            }
         }
     }
 
-    private static Runnable guard(String task, Runnable command) {
-        return Runnables.guarded(logger, task, command);
+    private void siftUp(int index, ScheduledTask task) {
+        while (index > 0) {
+            int parentIndex = (index - 1) >>> 1;
+            ScheduledTask parent = timerHeap[parentIndex];
+            if (task.compareTo(parent) >= 0) {
+                break;
+            }
+            timerHeap[index] = parent;
+            parent.heapIndex = index;
+            index = parentIndex;
+        }
+        timerHeap[index] = task;
+        task.heapIndex = index;
     }
 
-    private final class ScheduledHandle extends BaseIdempotentCloseable {
-        private final Future<?> scheduledFuture;
-        private final Closeable executorHandle;
+    private void siftDown(int index, ScheduledTask task) {
+        int half = timerHeapSize >>> 1;
+        while (index < half) {
+            int childIndex = (index << 1) + 1;
+            ScheduledTask child = timerHeap[childIndex];
+            int rightIndex = childIndex + 1;
+            if (rightIndex < timerHeapSize && child.compareTo(timerHeap[rightIndex]) > 0) {
+                childIndex = rightIndex;
+                child = timerHeap[childIndex];
+            }
+            if (task.compareTo(child) <= 0) {
+                break;
+            }
+            timerHeap[index] = child;
+            child.heapIndex = index;
+            index = childIndex;
+        }
+        timerHeap[index] = task;
+        task.heapIndex = index;
+    }
+
+    /**
+     * Growable circular array of tasks with their enqueue times; not thread safe.
+     */
+    private static final class TaskRing {
+        private Runnable[] tasks = new Runnable[INITIAL_CAPACITY];
+        private long[] enqueueTimesNanos = new long[INITIAL_CAPACITY];
+        private int head;
+        private int size;
+
+        void add(Runnable task, long enqueueTimeNanos) {
+            if (size == tasks.length) {
+                grow();
+            }
+            int tail = (head + size) & (tasks.length - 1);
+            tasks[tail] = task;
+            enqueueTimesNanos[tail] = enqueueTimeNanos;
+            size++;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long peekEnqueueTimeNanos() {
+            return enqueueTimesNanos[head];
+        }
+
+        Runnable poll() {
+            Runnable task = tasks[head];
+            tasks[head] = null;
+            head = (head + 1) & (tasks.length - 1);
+            size--;
+            return task;
+        }
 
-        private ScheduledHandle(Future<?> scheduledFuture) {
-            this.scheduledFuture = scheduledFuture;
-            executorHandle = () -> scheduledFuture.cancel(false);
+        private void grow() {
+            int capacity = tasks.length;
+            Runnable[] newTasks = new Runnable[capacity * 2];
+            long[] newEnqueueTimes = new long[capacity * 2];
+            int headPartLength = capacity - head;
+            System.arraycopy(tasks, head, newTasks, 0, headPartLength);
+            System.arraycopy(tasks, 0, newTasks, headPartLength, head);
+            System.arraycopy(enqueueTimesNanos, head, newEnqueueTimes, 0, headPartLength);
+            System.arraycopy(enqueueTimesNanos, 0, newEnqueueTimes, headPartLength, head);
+            tasks = newTasks;
+            enqueueTimesNanos = newEnqueueTimes;
+            head = 0;
+        }
+    }
+
+    private static final class SubmittedTask<T> extends CompletableFuture<T> implements Runnable {
+        private final Callable<? extends T> callable;
+        private final Runnable runnable;
+
+        SubmittedTask(Callable<? extends T> callable, Runnable runnable) {
+            this.callable = callable;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                // cancelled by the caller before it had a chance to run
+                return;
+            }
+            try {
+                if (callable != null) {
+                    complete(callable.call());
+                } else {
+                    runnable.run();
+                    complete(null);
+                }
+            } catch (Exception e) {
+                completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SubmittedTask{" + (callable != null ? callable : runnable) + '}';
+        }
+    }
+
+    private final class ScheduledTask implements Runnable, Closeable, Comparable<ScheduledTask> {
+        private final Runnable command;
+        private final long periodNanos;
+
+        // guarded by lock
+        private long triggerTimeNanos;
+        private long sequence;
+        private int heapIndex = -1;
+        private boolean cancelled;
+
+        ScheduledTask(Runnable command, long triggerTimeNanos, long periodNanos) {
+            this.command = checkNotNull(command);
+            this.triggerTimeNanos = triggerTimeNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        @Override
+        public void run() {
+            command.run();
+        }
+
+        @Override
+        public void close() {
+            cancel(this);
         }
 
         @Override
-        protected void doClose() {
-            executorHandle.close();
-            scheduleHandles.remove(this);
+        public int compareTo(ScheduledTask other) {
+            int result = Long.compare(triggerTimeNanos - other.triggerTimeNanos, 0);
+            // FIFO for tasks due at the same time
+            return result == 0 ? Long.compare(sequence, other.sequence) : result;
         }
 
         @Override
         public String toString() {
-            return scheduledFuture.toString();
+            return "ScheduledTask{" + command + '}';
         }
     }
 }
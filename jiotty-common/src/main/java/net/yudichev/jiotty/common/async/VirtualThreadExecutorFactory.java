@@ -0,0 +1,89 @@
+package net.yudichev.jiotty.common.async;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import net.yudichev.jiotty.common.inject.BaseLifecycleComponent;
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.yudichev.jiotty.common.lang.Locks.inLock;
+
+/**
+ * Creates executors whose tasks run on virtual threads. Each executor still executes its tasks serially and in order, but a task that
+ * blocks (sleeps, waits on a socket or a process) parks its virtual thread instead of holding on to a platform thread. All delayed tasks
+ * share one timer wheel thread.
+ * <p>
+ * The timer thread is created on first use and released on {@link #close()} or {@link #stop()}; executors created afterwards get a new one.
+ */
+public final class VirtualThreadExecutorFactory extends BaseLifecycleComponent implements ExecutorFactory, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadExecutorFactory.class);
+
+    private static final Duration TIMER_TICK_DURATION = Duration.ofMillis(10);
+    private static final int TIMER_TICKS_PER_WHEEL = 512;
+
+    private final ExecutorRegistryImpl registry;
+    private final Duration slowTaskThreshold;
+    private final Lock lock = new ReentrantLock();
+    // guarded by lock
+    @Nullable
+    private ExecutorService virtualThreadExecutor;
+    @Nullable
+    private HashedWheelTimer timer;
+
+    public VirtualThreadExecutorFactory() {
+        this(new ExecutorRegistryImpl(), ExecutorInstrumentation.DEFAULT_SLOW_TASK_THRESHOLD);
+    }
+
+    @Inject
+    VirtualThreadExecutorFactory(ExecutorRegistryImpl registry, @ExecutorInstrumentation.SlowTaskThreshold Duration slowTaskThreshold) {
+        this.registry = checkNotNull(registry);
+        this.slowTaskThreshold = checkNotNull(slowTaskThreshold);
+    }
+
+    @Override
+    public SchedulingExecutor createSingleThreadedSchedulingExecutor(String threadNameBase) {
+        return inLock(lock, () -> {
+            if (virtualThreadExecutor == null) {
+                virtualThreadExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("virtual-executor-", 0).factory());
+                timer = new HashedWheelTimer("virtual-executor-timer", TIMER_TICK_DURATION, TIMER_TICKS_PER_WHEEL);
+            }
+            return registry.register(new SharedPoolSchedulingExecutor(virtualThreadExecutor, timer, threadNameBase, slowTaskThreshold, registry::unregister));
+        });
+    }
+
+    @Override
+    public void close() {
+        ExecutorService executorToClose;
+        HashedWheelTimer timerToClose;
+        lock.lock();
+        try {
+            executorToClose = virtualThreadExecutor;
+            timerToClose = timer;
+            virtualThreadExecutor = null;
+            timer = null;
+        } finally {
+            lock.unlock();
+        }
+        if (executorToClose != null) {
+            timerToClose.close();
+            if (!MoreExecutors.shutdownAndAwaitTermination(executorToClose, 10, SECONDS)) {
+                logger.warn("Was not able to gracefully stop virtual thread executor in 10 seconds");
+            }
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        close();
+    }
+}
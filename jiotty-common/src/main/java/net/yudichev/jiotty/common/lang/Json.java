@@ -2,17 +2,24 @@ package net.yudichev.jiotty.common.lang;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.google.common.reflect.TypeToken;
 
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public final class Json {
     private static final ObjectMapper mapper = new ObjectMapper()
             .registerModule(new Jdk8Module())
             .registerModule(new JavaTimeModule())
             .registerModule(new GuavaModule());
+    private static final Map<Type, ObjectReader> readersByType = new ConcurrentHashMap<>();
 
     private Json() {
     }
@@ -25,10 +32,25 @@ public final class Json {
         return MoreThrowables.getAsUnchecked(() -> mapper.readValue(json, type));
     }
 
+    public static <T> T parse(byte[] json, Class<T> type) {
+        return MoreThrowables.getAsUnchecked(() -> mapper.readValue(json, type));
+    }
+
     public static <T> T parse(String json, TypeToken<T> type) {
         return MoreThrowables.getAsUnchecked(() -> mapper.readValue(json, mapper.getTypeFactory().constructType(type.getType())));
     }
 
+    /**
+     * Decodes directly from the stream, which is not closed, using a reader cached per type.
+     */
+    public static <T> T parse(InputStream json, TypeToken<T> type) {
+        return MoreThrowables.getAsUnchecked(() -> readerFor(type).readValue(json));
+    }
+
+    private static ObjectReader readerFor(TypeToken<?> type) {
+        return readersByType.computeIfAbsent(type.getType(), t -> mapper.readerFor(mapper.getTypeFactory().constructType(t)));
+    }
+
     public static ObjectNode object() {
         return mapper.createObjectNode();
     }
@@ -0,0 +1,102 @@
+package net.yudichev.jiotty.common.rest;
+
+import com.google.common.collect.ImmutableSortedMap;
+import net.yudichev.jiotty.common.async.LatencyHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link HttpClientMetrics} kept in memory per host, so that it is easy to tell which device or service is slow or failing.
+ */
+public final class AggregatingHttpClientMetrics implements HttpClientMetrics {
+    private final Map<String, HostCounters> countersByHost = new ConcurrentHashMap<>();
+
+    @Override
+    public void dnsResolved(String host, long durationNanos) {
+        counters(host).dnsTime.record(durationNanos);
+    }
+
+    @Override
+    public void connected(String host, long durationNanos) {
+        counters(host).connectTime.record(durationNanos);
+    }
+
+    @Override
+    public void tlsHandshakeCompleted(String host, long durationNanos) {
+        counters(host).tlsHandshakeTime.record(durationNanos);
+    }
+
+    @Override
+    public void callCompleted(String host, int statusCode, long responseBytes, long timeToFirstByteNanos, long totalNanos) {
+        HostCounters counters = counters(host);
+        counters.statusCodeCounts.computeIfAbsent(statusCode, key -> new LongAdder()).increment();
+        if (responseBytes > 0) {
+            counters.responseBytes.add(responseBytes);
+        }
+        counters.timeToFirstByte.record(timeToFirstByteNanos);
+        counters.totalTime.record(totalNanos);
+    }
+
+    @Override
+    public void callFailed(String host, long totalNanos) {
+        HostCounters counters = counters(host);
+        counters.failedCallCount.increment();
+        counters.totalTime.record(totalNanos);
+    }
+
+    @Override
+    public void callRetried(String host) {
+        counters(host).retryCount.increment();
+    }
+
+    public Map<String, HostStats> snapshot() {
+        var stats = ImmutableSortedMap.<String, HostStats>naturalOrder();
+        countersByHost.forEach((host, counters) -> {
+            var statusCodeCounts = ImmutableSortedMap.<Integer, Long>naturalOrder();
+            counters.statusCodeCounts.forEach((statusCode, count) -> statusCodeCounts.put(statusCode, count.sum()));
+            stats.put(host, new HostStats(statusCodeCounts.build(),
+                                          counters.failedCallCount.sum(),
+                                          counters.retryCount.sum(),
+                                          counters.responseBytes.sum(),
+                                          counters.dnsTime.snapshot(),
+                                          counters.connectTime.snapshot(),
+                                          counters.tlsHandshakeTime.snapshot(),
+                                          counters.timeToFirstByte.snapshot(),
+                                          counters.totalTime.snapshot()));
+        });
+        return stats.build();
+    }
+
+    private HostCounters counters(String host) {
+        HostCounters counters = countersByHost.get(host);
+        return counters == null ? countersByHost.computeIfAbsent(host, key -> new HostCounters()) : counters;
+    }
+
+    /**
+     * @param totalTime of both completed and failed calls
+     */
+    public record HostStats(Map<Integer, Long> callCountsByStatusCode,
+                            long failedCallCount,
+                            long retryCount,
+                            long responseBytes,
+                            LatencyHistogram.Snapshot dnsTime,
+                            LatencyHistogram.Snapshot connectTime,
+                            LatencyHistogram.Snapshot tlsHandshakeTime,
+                            LatencyHistogram.Snapshot timeToFirstByte,
+                            LatencyHistogram.Snapshot totalTime) {
+    }
+
+    private static final class HostCounters {
+        final Map<Integer, LongAdder> statusCodeCounts = new ConcurrentHashMap<>();
+        final LongAdder failedCallCount = new LongAdder();
+        final LongAdder retryCount = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+        final LatencyHistogram dnsTime = new LatencyHistogram();
+        final LatencyHistogram connectTime = new LatencyHistogram();
+        final LatencyHistogram tlsHandshakeTime = new LatencyHistogram();
+        final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+        final LatencyHistogram totalTime = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,39 @@
+package net.yudichev.jiotty.common.rest;
+
+import net.yudichev.jiotty.common.lang.PublicImmutablesStyle;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * How long {@link RestResponseCache} keeps responses. When more than {@link #maxEntries()} requests are cached, the least recently used
+ * response is evicted.
+ */
+@Value.Immutable
+@PublicImmutablesStyle
+interface BaseRestCachePolicy {
+    @Value.Parameter
+    Duration timeToLive();
+
+    /**
+     * How long after {@link #timeToLive()} an expired response is still returned while it is being reloaded in the background.
+     */
+    @Value.Default
+    default Duration staleWhileRevalidate() {
+        return Duration.ZERO;
+    }
+
+    @Value.Default
+    default int maxEntries() {
+        return 100;
+    }
+
+    @Value.Check
+    default void validate() {
+        checkArgument(!timeToLive().isNegative(), "timeToLive must not be negative");
+        checkArgument(!staleWhileRevalidate().isNegative(), "staleWhileRevalidate must not be negative");
+        checkArgument(maxEntries() > 0, "maxEntries must be positive");
+    }
+}
@@ -0,0 +1,64 @@
+package net.yudichev.jiotty.common.rest;
+
+import net.yudichev.jiotty.common.lang.PublicImmutablesStyle;
+import net.yudichev.jiotty.common.lang.backoff.BackOff;
+import net.yudichev.jiotty.common.lang.backoff.ExponentialBackOff;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.toIntExact;
+
+/**
+ * How {@link RestClients#call(okhttp3.Call, com.google.common.reflect.TypeToken, RestRetryPolicy)} retries failed calls: with exponential,
+ * randomized delays, only for idempotent methods unless {@link #retryNonIdempotent()} and within the retry budget of the host.
+ */
+@Value.Immutable
+@PublicImmutablesStyle
+interface BaseRestRetryPolicy {
+    @Value.Default
+    default int maxRetries() {
+        return 3;
+    }
+
+    @Value.Default
+    default Duration initialInterval() {
+        return Duration.ofMillis(200);
+    }
+
+    @Value.Default
+    default Duration maxInterval() {
+        return Duration.ofSeconds(10);
+    }
+
+    @Value.Default
+    default double multiplier() {
+        return 2;
+    }
+
+    @Value.Default
+    default double randomizationFactor() {
+        return ExponentialBackOff.DEFAULT_RANDOMIZATION_FACTOR;
+    }
+
+    @Value.Default
+    default boolean retryNonIdempotent() {
+        return false;
+    }
+
+    @Value.Check
+    default void validate() {
+        checkArgument(maxRetries() >= 0, "maxRetries must not be negative");
+    }
+
+    default BackOff newBackOff() {
+        return new ExponentialBackOff.Builder()
+                .setInitialIntervalMillis(toIntExact(initialInterval().toMillis()))
+                .setMaxIntervalMillis(toIntExact(maxInterval().toMillis()))
+                .setMultiplier(multiplier())
+                .setRandomizationFactor(randomizationFactor())
+                .setMaxElapsedTimeMillis(Integer.MAX_VALUE)
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package net.yudichev.jiotty.common.rest;
+
+/**
+ * Receives measurements of the HTTP calls made by {@link RestClients#newClient() REST clients}, per host, e.g. to export them to a
+ * monitoring system; {@link AggregatingHttpClientMetrics} keeps them in memory. Install with {@link RestClients#setMetrics}. Methods are
+ * called on the HTTP client threads, so implementations must be thread safe and cheap. Durations are in nanoseconds.
+ */
+public interface HttpClientMetrics {
+    HttpClientMetrics NOOP = new HttpClientMetrics() {};
+
+    default void dnsResolved(String host, long durationNanos) {
+    }
+
+    /**
+     * A new connection was established.
+     *
+     * @param durationNanos including the TLS handshake, if any
+     */
+    default void connected(String host, long durationNanos) {
+    }
+
+    default void tlsHandshakeCompleted(String host, long durationNanos) {
+    }
+
+    /**
+     * @param responseBytes         size of the response body, or -1 if it was not read
+     * @param timeToFirstByteNanos  from the start of the call until the response headers started arriving
+     * @param totalNanos            from the start of the call until the response body was consumed
+     */
+    default void callCompleted(String host, int statusCode, long responseBytes, long timeToFirstByteNanos, long totalNanos) {
+    }
+
+    default void callFailed(String host, long totalNanos) {
+    }
+
+    /**
+     * {@link RestClients#call} is retrying a failed call.
+     */
+    default void callRetried(String host) {
+    }
+}
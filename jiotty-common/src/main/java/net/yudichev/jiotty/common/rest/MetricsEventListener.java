@@ -0,0 +1,100 @@
+package net.yudichev.jiotty.common.rest;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Times the phases of one call and reports them to {@link RestClients#metrics()}. Events of a call are delivered sequentially.
+ */
+final class MetricsEventListener extends EventListener {
+    static final EventListener.Factory FACTORY = call -> {
+        HttpClientMetrics metrics = RestClients.metrics();
+        return metrics == HttpClientMetrics.NOOP ? EventListener.NONE : new MetricsEventListener(metrics, call.request().url().host());
+    };
+
+    private final HttpClientMetrics metrics;
+    private final String host;
+    private long callStartNanos;
+    private long dnsStartNanos;
+    private long connectStartNanos;
+    private long tlsStartNanos;
+    private long timeToFirstByteNanos;
+    private int statusCode;
+    private long responseBytes = -1;
+
+    private MetricsEventListener(HttpClientMetrics metrics, String host) {
+        this.metrics = checkNotNull(metrics);
+        this.host = checkNotNull(host);
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        metrics.dnsResolved(host, System.nanoTime() - dnsStartNanos);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        tlsStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        metrics.tlsHandshakeCompleted(host, System.nanoTime() - tlsStartNanos);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        metrics.connected(host, System.nanoTime() - connectStartNanos);
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        timeToFirstByteNanos = System.nanoTime() - callStartNanos;
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        statusCode = response.code();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        responseBytes = byteCount;
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        metrics.callCompleted(host, statusCode, responseBytes, timeToFirstByteNanos, System.nanoTime() - callStartNanos);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        metrics.callFailed(host, System.nanoTime() - callStartNanos);
+    }
+}
@@ -5,36 +5,48 @@ import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.MoreExecutors;
 import net.yudichev.jiotty.common.lang.Json;
 import okhttp3.Call;
-import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Response;
 import okhttp3.ResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 import static net.yudichev.jiotty.common.lang.Closeable.closeSafelyIfNotNull;
 
 public final class RestClients {
     private static final Logger logger = LoggerFactory.getLogger(RestClients.class);
 
-    private static final int DEFAULT_CALL_RETRY_COUNT = 3;
+    static final RestRetryPolicy DEFAULT_RETRY_POLICY = RestRetryPolicy.builder().build();
     private static final Duration DEFAULT_HTTP_TIMEOUT = Duration.ofSeconds(60);
 
+    private static volatile HttpClientMetrics metrics = HttpClientMetrics.NOOP;
+
     private RestClients() {
     }
 
+    /**
+     * The returned client shares its dispatcher and connection pool with all other clients created here, so it must not change them; use
+     * {@link #setMaxRequests} and {@link #setMaxRequestsPerHost} to change the shared limits, or supply an own dispatcher via
+     * {@link #newClient(Consumer)}.
+     */
     public static OkHttpClient newClient() {
         return newClient(builder -> {});
     }
 
     public static OkHttpClient newClient(Consumer<? super OkHttpClient.Builder> customizer) {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        OkHttpClient.Builder builder = SharedHttpClient.root().newBuilder()
                 .followRedirects(true)
                 .followSslRedirects(true)
                 .connectTimeout(DEFAULT_HTTP_TIMEOUT)
@@ -45,12 +57,59 @@ public final class RestClients {
         return builder.build();
     }
 
+    /**
+     * For calls that stay open indefinitely, such as event streams. The client has no read, write or call timeouts and its own dispatcher,
+     * so that its calls do not hold the per-host slots of the dispatcher shared by other clients; {@link #shutdown} releases it.
+     */
+    public static OkHttpClient newStreamingClient(Consumer<? super OkHttpClient.Builder> customizer) {
+        return newClient(builder -> {
+            builder.dispatcher(new Dispatcher())
+                   .readTimeout(Duration.ZERO)
+                   .callTimeout(Duration.ZERO)
+                   .writeTimeout(Duration.ZERO);
+            customizer.accept(builder);
+        });
+    }
+
+    /**
+     * Installs the metrics that all clients report to from now on.
+     */
+    public static void setMetrics(HttpClientMetrics metrics) {
+        RestClients.metrics = checkNotNull(metrics);
+    }
+
+    static HttpClientMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the budget that limits retries by all clients: every call to a host adds {@code retriesPerCall} to its budget, up to
+     * {@code maxRetries}, and every retry takes one. The new budget starts full for all hosts. Defaults are 10 and 0.2.
+     */
+    public static void setRetryBudget(double maxRetries, double retriesPerCall) {
+        SharedHttpClient.setRetryBudget(new RetryBudget(maxRetries, retriesPerCall));
+    }
+
+    /**
+     * Sets how many calls all clients sharing the dispatcher may run at once. Default is 128.
+     */
+    public static void setMaxRequests(int maxRequests) {
+        SharedHttpClient.setMaxRequests(maxRequests);
+    }
+
+    /**
+     * Sets how many calls to one host all clients sharing the dispatcher may run at once. Default is 5.
+     */
+    public static void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        SharedHttpClient.setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
     public static <T> CompletableFuture<T> call(Call theCall, Class<? extends T> responseType) {
-        return call(theCall, responseType, DEFAULT_CALL_RETRY_COUNT);
+        return call(theCall, responseType, DEFAULT_RETRY_POLICY);
     }
 
     public static <T> CompletableFuture<T> call(Call theCall, TypeToken<? extends T> responseType) {
-        return call(theCall, responseType, DEFAULT_CALL_RETRY_COUNT);
+        return call(theCall, responseType, DEFAULT_RETRY_POLICY);
     }
 
     public static <T> CompletableFuture<T> call(Call theCall, Class<? extends T> responseType, int retryCount) {
@@ -58,58 +117,48 @@ public final class RestClients {
     }
 
     public static <T> CompletableFuture<T> call(Call theCall, TypeToken<? extends T> responseType, int retryCount) {
+        return call(theCall, responseType, DEFAULT_RETRY_POLICY.withMaxRetries(retryCount));
+    }
+
+    public static <T> CompletableFuture<T> call(Call theCall, Class<? extends T> responseType, RestRetryPolicy retryPolicy) {
+        return call(theCall, TypeToken.of(responseType), retryPolicy);
+    }
+
+    public static <T> CompletableFuture<T> call(Call theCall, TypeToken<? extends T> responseType, RestRetryPolicy retryPolicy) {
         CompletableFuture<T> future = new CompletableFuture<>();
-        theCall.enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                logger.debug("Call failed: {}, retries left: {}", call, retryCount, e);
-                if (retryCount == 0) {
-                    future.completeExceptionally(new RuntimeException("call failed: " + call.request(), e));
-                } else {
-                    call(call.clone(), responseType, retryCount - 1)
-                            .whenComplete((result, exception) -> {
-                                if (exception == null) {
-                                    future.complete(result);
-                                } else {
-                                    future.completeExceptionally(exception);
-                                }
-                            });
-                }
-            }
+        new RetryingCall<>(theCall.request(), responseType, retryPolicy, future).start(theCall);
+        return future;
+    }
 
-            @Override
-            public void onResponse(Call call, okhttp3.Response response) {
-                try (ResponseBody responseBody = response.body()) {
-                    try {
-                        if (response.isSuccessful()) {
-                            if (response.code() == 204) { // no body
-                                if (responseType.getType() == Void.class) {
-                                    future.complete(null);
-                                } else {
-                                    future.completeExceptionally(new RuntimeException(
-                                            "Response is successful but empty, however expected response type is " + responseType));
-                                }
-                            } else {
-                                String responseString = requireNonNull(responseBody).string();
-                                T responseData;
-                                try {
-                                    responseData = Json.parse(responseString, responseType);
-                                    future.complete(responseData);
-                                } catch (RuntimeException e) {
-                                    future.completeExceptionally(new RuntimeException("Failed parsing response " + responseString, e));
-                                }
-                            }
+    static <T> void complete(Response response, TypeToken<? extends T> responseType, CompletableFuture<T> future) {
+        try (ResponseBody responseBody = response.body()) {
+            try {
+                if (response.isSuccessful()) {
+                    if (response.code() == 204) { // no body
+                        if (responseType.getType() == Void.class) {
+                            future.complete(null);
                         } else {
                             future.completeExceptionally(new RuntimeException(
-                                    "Response code " + response.code() + (responseBody == null ? "" : ", body: " + responseBody.string())));
+                                    "Response is successful but empty, however expected response type is " + responseType));
+                        }
+                    } else {
+                        var responseStream = new PrefixRetainingInputStream(requireNonNull(responseBody).byteStream());
+                        T responseData;
+                        try {
+                            responseData = Json.parse(responseStream, responseType);
+                            future.complete(responseData);
+                        } catch (RuntimeException e) {
+                            future.completeExceptionally(new RuntimeException("Failed parsing response " + responseStream.prefix(), e));
                         }
-                    } catch (RuntimeException | IOException e) {
-                        future.completeExceptionally(new RuntimeException("failed to process response body", e));
                     }
+                } else {
+                    future.completeExceptionally(new RuntimeException(
+                            "Response code " + response.code() + (responseBody == null ? "" : ", body: " + responseBody.string())));
                 }
+            } catch (RuntimeException | IOException e) {
+                future.completeExceptionally(new RuntimeException("failed to process response body", e));
             }
-        });
-        return future;
+        }
     }
 
     public static JsonNode getRequiredNode(JsonNode parentNode, String nodeName) {
@@ -144,11 +193,62 @@ public final class RestClients {
     public static void shutdown(OkHttpClient client, Duration timeout) {
         try {
             logger.debug("Shutting down {}", client);
-            MoreExecutors.shutdownAndAwaitTermination(client.dispatcher().executorService(), timeout);
-            client.connectionPool().evictAll();
+            // the dispatcher and connection pool shared by all clients stay up; only those set by the client's customizer are released
+            if (SharedHttpClient.ownsDispatcher(client)) {
+                MoreExecutors.shutdownAndAwaitTermination(client.dispatcher().executorService(), timeout);
+            }
+            if (SharedHttpClient.ownsConnectionPool(client)) {
+                client.connectionPool().evictAll();
+            }
             closeSafelyIfNotNull(logger, client.cache());
         } catch (RuntimeException e) {
             logger.warn("Failed to gracefully shut down client {} in {}", client, timeout, e);
         }
     }
+
+    /**
+     * Keeps the first bytes read so that a response that fails to parse can be shown in the error without holding all of it.
+     */
+    private static final class PrefixRetainingInputStream extends FilterInputStream {
+        private static final int MAX_PREFIX_LENGTH = 1024;
+
+        private final byte[] prefix = new byte[MAX_PREFIX_LENGTH];
+        private int prefixLength;
+        private boolean truncated;
+
+        PrefixRetainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0 && prefixLength < MAX_PREFIX_LENGTH) {
+                prefix[prefixLength++] = (byte) b;
+            } else if (b >= 0) {
+                truncated = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                retain(b, off, count);
+            }
+            return count;
+        }
+
+        String prefix() {
+            return new String(prefix, 0, prefixLength, UTF_8) + (truncated ? "..." : "");
+        }
+
+        private void retain(byte[] b, int off, int len) {
+            int length = Math.min(len, MAX_PREFIX_LENGTH - prefixLength);
+            System.arraycopy(b, off, prefix, prefixLength, length);
+            prefixLength += length;
+            truncated |= length < len;
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package net.yudichev.jiotty.common.rest;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
+import net.yudichev.jiotty.common.lang.backoff.NanoClock;
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Opt-in cache of decoded responses of {@link RestClients#call} for data that rarely changes. Responses are keyed by method, URL, headers
+ * and response type; only GET and HEAD calls are cached and others are passed through. Concurrent identical calls share one HTTP call,
+ * and failures are not cached. Calls served from the cache are never executed, and callers share the cached instances, so they must not
+ * modify them.
+ */
+public final class RestResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(RestResponseCache.class);
+
+    private static final Set<String> CACHEABLE_METHODS = ImmutableSet.of("GET", "HEAD");
+
+    private final NanoClock nanoClock;
+    private final long timeToLiveNanos;
+    private final long expiryNanos;
+    private final Map<Key, Entry> entriesByKey;
+
+    public RestResponseCache(RestCachePolicy policy) {
+        this(policy, NanoClock.SYSTEM);
+    }
+
+    RestResponseCache(RestCachePolicy policy, NanoClock nanoClock) {
+        this.nanoClock = checkNotNull(nanoClock);
+        timeToLiveNanos = policy.timeToLive().toNanos();
+        expiryNanos = timeToLiveNanos + policy.staleWhileRevalidate().toNanos();
+        int maxEntries = policy.maxEntries();
+        entriesByKey = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public <T> CompletableFuture<T> call(Call theCall, Class<? extends T> responseType) {
+        return call(theCall, TypeToken.of(responseType));
+    }
+
+    public <T> CompletableFuture<T> call(Call theCall, TypeToken<? extends T> responseType) {
+        return call(theCall, responseType, RestClients.DEFAULT_RETRY_POLICY);
+    }
+
+    @SuppressWarnings("unchecked") // the response type is a part of the key
+    public <T> CompletableFuture<T> call(Call theCall, TypeToken<? extends T> responseType, RestRetryPolicy retryPolicy) {
+        Request request = theCall.request();
+        if (!CACHEABLE_METHODS.contains(request.method())) {
+            return RestClients.call(theCall, responseType, retryPolicy);
+        }
+        var key = new Key(request.method(), request.url(), request.headers(), responseType.getType());
+        long nowNanos = nanoClock.nanoTime();
+        Entry entry;
+        boolean load = false;
+        boolean revalidate = false;
+        synchronized (this) {
+            entry = entriesByKey.get(key);
+            if (entry == null || entry.value.isDone() && nowNanos - entry.loadedNanos > expiryNanos) {
+                entry = new Entry();
+                entriesByKey.put(key, entry);
+                load = true;
+            } else if (entry.value.isDone() && !entry.revalidating && nowNanos - entry.loadedNanos > timeToLiveNanos) {
+                entry.revalidating = true;
+                revalidate = true;
+            }
+        }
+        if (load) {
+            load(key, entry, theCall, responseType, retryPolicy);
+        } else if (revalidate) {
+            revalidate(key, entry, theCall, responseType, retryPolicy);
+        }
+        // a copy, so that a caller completing or cancelling its future does not affect others
+        return (CompletableFuture<T>) entry.value.copy();
+    }
+
+    public synchronized void invalidateAll() {
+        entriesByKey.clear();
+    }
+
+    private void load(Key key, Entry entry, Call theCall, TypeToken<?> responseType, RestRetryPolicy retryPolicy) {
+        RestClients.call(theCall, responseType, retryPolicy).whenComplete((result, exception) -> {
+            // bookkeeping first, so that a completed entry always has its load time
+            synchronized (this) {
+                if (exception == null) {
+                    entry.loadedNanos = nanoClock.nanoTime();
+                } else {
+                    entriesByKey.remove(key, entry);
+                }
+            }
+            if (exception == null) {
+                entry.value.complete(result);
+            } else {
+                entry.value.completeExceptionally(exception);
+            }
+        });
+    }
+
+    private void revalidate(Key key, Entry staleEntry, Call theCall, TypeToken<?> responseType, RestRetryPolicy retryPolicy) {
+        logger.debug("Revalidating {}", theCall.request());
+        RestClients.call(theCall, responseType, retryPolicy).whenComplete((result, exception) -> {
+            synchronized (this) {
+                if (exception == null) {
+                    var entry = new Entry();
+                    entry.loadedNanos = nanoClock.nanoTime();
+                    entry.value.complete(result);
+                    entriesByKey.replace(key, staleEntry, entry);
+                } else {
+                    logger.debug("Failed revalidating {}, keeping the stale response", theCall.request(), exception);
+                    staleEntry.revalidating = false;
+                }
+            }
+        });
+    }
+
+    private record Key(String method, HttpUrl url, Headers headers, Type responseType) {
+    }
+
+    private static final class Entry {
+        final CompletableFuture<Object> value = new CompletableFuture<>();
+        // guarded by the cache
+        long loadedNanos;
+        boolean revalidating;
+    }
+}
@@ -0,0 +1,54 @@
+package net.yudichev.jiotty.common.rest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
+
+/**
+ * Limits retries to a fraction of the calls made to each host, so that retries stop amplifying the load when the host is failing anyway.
+ * Hosts that are not called for a while are forgotten, so that their number stays bounded.
+ */
+final class RetryBudget {
+    static final double DEFAULT_MAX_RETRIES = 10;
+    static final double DEFAULT_RETRIES_PER_CALL = 0.2;
+    private static final Duration IDLE_HOST_EXPIRY = Duration.ofMinutes(10);
+
+    private final double maxRetries;
+    private final double retriesPerCall;
+    private final Cache<String, HostBudget> budgetsByHost = CacheBuilder.newBuilder().expireAfterAccess(IDLE_HOST_EXPIRY).build();
+
+    RetryBudget() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_RETRIES_PER_CALL);
+    }
+
+    RetryBudget(double maxRetries, double retriesPerCall) {
+        checkArgument(maxRetries >= 0, "maxRetries must not be negative: %s", maxRetries);
+        checkArgument(retriesPerCall >= 0, "retriesPerCall must not be negative: %s", retriesPerCall);
+        this.maxRetries = maxRetries;
+        this.retriesPerCall = retriesPerCall;
+    }
+
+    HostBudget forHost(String host) {
+        return getAsUnchecked(() -> budgetsByHost.get(host, HostBudget::new));
+    }
+
+    final class HostBudget {
+        private double tokens = maxRetries;
+
+        synchronized void callMade() {
+            tokens = Math.min(maxRetries, tokens + retriesPerCall);
+        }
+
+        synchronized boolean tryRetry() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package net.yudichev.jiotty.common.rest;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
+import net.yudichev.jiotty.common.lang.CompletableFutures;
+import net.yudichev.jiotty.common.lang.backoff.BackOff;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+final class RetryingCall<T> implements Callback {
+    private static final Logger logger = LoggerFactory.getLogger(RetryingCall.class);
+
+    private static final Set<String> IDEMPOTENT_METHODS = ImmutableSet.of("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE");
+    private static final Set<Integer> RETRYABLE_RESPONSE_CODES = ImmutableSet.of(429, 502, 503, 504);
+
+    private final TypeToken<? extends T> responseType;
+    private final RestRetryPolicy retryPolicy;
+    private final CompletableFuture<T> future;
+    private final boolean retryable;
+    private final RetryBudget.HostBudget retryBudget;
+    private final BackOff backOff;
+    // attempts are sequential, so there's no concurrent access
+    private int retriesLeft;
+
+    RetryingCall(Request request, TypeToken<? extends T> responseType, RestRetryPolicy retryPolicy, CompletableFuture<T> future) {
+        this.responseType = checkNotNull(responseType);
+        this.retryPolicy = checkNotNull(retryPolicy);
+        this.future = checkNotNull(future);
+        retryable = retryPolicy.maxRetries() > 0 && (retryPolicy.retryNonIdempotent() || IDEMPOTENT_METHODS.contains(request.method()));
+        // calls that are never retried neither use nor replenish the budget
+        retryBudget = retryable ? SharedHttpClient.retryBudget().forHost(request.url().host()) : null;
+        backOff = retryPolicy.newBackOff();
+        retriesLeft = retryPolicy.maxRetries();
+    }
+
+    void start(Call call) {
+        if (retryBudget != null) {
+            retryBudget.callMade();
+        }
+        call.enqueue(this);
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+        if (call.isCanceled() || !retry(call, 0)) {
+            logger.debug("Call failed: {}", call, e);
+            future.completeExceptionally(new RuntimeException("call failed: " + call.request(), e));
+        }
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) {
+        if (RETRYABLE_RESPONSE_CODES.contains(response.code()) && retry(call, retryAfterMillis(response))) {
+            response.close();
+        } else {
+            RestClients.complete(response, responseType, future);
+        }
+    }
+
+    private boolean retry(Call call, long minDelayMillis) {
+        if (!retryable || retriesLeft == 0 || minDelayMillis > retryPolicy.maxInterval().toMillis()) {
+            return false;
+        }
+        if (!retryBudget.tryRetry()) {
+            logger.debug("Retry budget of {} is exhausted, not retrying {}", call.request().url().host(), call);
+            return false;
+        }
+        retriesLeft--;
+        RestClients.metrics().callRetried(call.request().url().host());
+        long delayMillis = Math.max(backOff.nextBackOffMillis(), minDelayMillis);
+        logger.debug("Call failed: {}, retrying in {}ms, retries left: {}", call, delayMillis, retriesLeft);
+        CompletableFutures.delay(delayMillis).thenRun(() -> call.clone().enqueue(this));
+        return true;
+    }
+
+    private static long retryAfterMillis(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+            } catch (NumberFormatException ignored) {
+                // an HTTP date, fall back to the backoff
+            }
+        }
+        return 0;
+    }
+}
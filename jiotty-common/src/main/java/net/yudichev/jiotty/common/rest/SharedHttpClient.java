@@ -0,0 +1,74 @@
+package net.yudichev.jiotty.common.rest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * The root client all {@link RestClients#newClient() clients} derive from, so that they share one dispatcher, one connection pool and one
+ * retry budget. Dispatcher threads are daemon and exit when idle, so the shared resources need no explicit shutdown.
+ */
+final class SharedHttpClient {
+    static final int MAX_REQUESTS = 128;
+    static final int MAX_REQUESTS_PER_HOST = 5;
+    static final int MAX_IDLE_CONNECTIONS = 32;
+    static final int KEEP_ALIVE_MINUTES = 5;
+
+    private static final OkHttpClient ROOT = createRoot();
+    private static volatile RetryBudget retryBudget = new RetryBudget();
+
+    private SharedHttpClient() {
+    }
+
+    static OkHttpClient root() {
+        return ROOT;
+    }
+
+    static RetryBudget retryBudget() {
+        return retryBudget;
+    }
+
+    static void setRetryBudget(RetryBudget retryBudget) {
+        SharedHttpClient.retryBudget = checkNotNull(retryBudget);
+    }
+
+    static void setMaxRequests(int maxRequests) {
+        ROOT.dispatcher().setMaxRequests(maxRequests);
+    }
+
+    static void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        ROOT.dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    static boolean ownsDispatcher(OkHttpClient client) {
+        return client.dispatcher() != ROOT.dispatcher();
+    }
+
+    static boolean ownsConnectionPool(OkHttpClient client) {
+        return client.connectionPool() != ROOT.connectionPool();
+    }
+
+    private static OkHttpClient createRoot() {
+        var executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, SECONDS, new SynchronousQueue<>(),
+                                              new ThreadFactoryBuilder()
+                                                      .setNameFormat("http-client-%s")
+                                                      .setDaemon(true)
+                                                      .build());
+        var dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, MINUTES))
+                .eventListenerFactory(MetricsEventListener.FACTORY)
+                .build();
+    }
+}
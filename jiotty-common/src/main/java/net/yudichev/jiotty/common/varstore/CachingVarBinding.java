@@ -0,0 +1,53 @@
+package net.yudichev.jiotty.common.varstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.annotation.Nullable;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
+import static net.yudichev.jiotty.common.varstore.VarStoreFile.mapper;
+
+final class CachingVarBinding<T> implements VarBinding<T> {
+    private final TreeVarStore varStore;
+    private final String key;
+    private final ObjectReader reader;
+
+    @Nullable
+    private volatile CachedValue<T> cachedValue;
+
+    CachingVarBinding(TreeVarStore varStore, Class<T> type, String key) {
+        this.varStore = checkNotNull(varStore);
+        this.key = checkNotNull(key);
+        reader = mapper.readerFor(type);
+    }
+
+    @Override
+    public Optional<T> get() {
+        // read the version first: if a write sneaks in before readNode(), the value is merely decoded again on the next get()
+        long version = varStore.version();
+        CachedValue<T> cached = cachedValue;
+        if (cached != null && cached.version() == version) {
+            return cached.value();
+        }
+        JsonNode valueNode = varStore.readNode(key);
+        Optional<T> value = valueNode == null ? Optional.empty() : Optional.of(getAsUnchecked(() -> reader.readValue(valueNode)));
+        cachedValue = new CachedValue<>(version, value);
+        return value;
+    }
+
+    @Override
+    public void set(T value) {
+        varStore.saveValue(key, value);
+    }
+
+    @Override
+    public String toString() {
+        return "CachingVarBinding{" + key + '}';
+    }
+
+    private record CachedValue<T>(long version, Optional<T> value) {
+    }
+}
@@ -0,0 +1,192 @@
+package net.yudichev.jiotty.common.varstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.inject.BindingAnnotation;
+import net.yudichev.jiotty.common.async.ExecutorFactory;
+import net.yudichev.jiotty.common.async.SchedulingExecutor;
+import net.yudichev.jiotty.common.inject.BaseLifecycleComponent;
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static net.yudichev.jiotty.common.lang.Closeable.closeIfNotNull;
+import static net.yudichev.jiotty.common.lang.Locks.inLock;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
+import static net.yudichev.jiotty.common.varstore.VarStoreFile.mapper;
+
+/**
+ * Keeps the whole store in memory: the file is read once, reads are served from memory, and writes made within the write-behind delay
+ * of each other are coalesced into one atomic file write done in the background. Pending writes are flushed on stop. While the component is
+ * not started, writes go straight to the file.
+ */
+public final class CachingVarStore extends BaseLifecycleComponent implements TreeVarStore {
+    private static final Logger logger = LoggerFactory.getLogger(CachingVarStore.class);
+
+    private final VarStoreFile storeFile;
+    private final ExecutorFactory executorFactory;
+    private final Duration writeBehindDelay;
+    private final Lock lock = new ReentrantLock();
+    /**
+     * Serialises file writes. Never acquired while holding {@link #lock}; instead, each snapshot is numbered under {@link #lock} and one
+     * older than what is already in the file is not written.
+     */
+    private final Lock fileLock = new ReentrantLock();
+    private final VarStoreSubscriptions subscriptions = new VarStoreSubscriptions();
+
+    // guarded by lock
+    @Nullable
+    private ObjectNode configNode;
+    private boolean dirty;
+    private long snapshotSequence;
+    @Nullable
+    private SchedulingExecutor executor;
+    @Nullable
+    private Closeable scheduledFlush;
+    private volatile long version;
+    // guarded by fileLock
+    private long writtenSnapshotSequence;
+
+    @Inject
+    public CachingVarStore(@VarStoreImpl.StoreFile Path storeFile,
+                           ExecutorFactory executorFactory,
+                           @WriteBehindDelay Duration writeBehindDelay) {
+        this.storeFile = new VarStoreFile(storeFile);
+        this.executorFactory = checkNotNull(executorFactory);
+        this.writeBehindDelay = checkNotNull(writeBehindDelay);
+        logger.info("Using store file {} with write-behind delay {}", this.storeFile, writeBehindDelay);
+    }
+
+    @Override
+    public void saveNode(String key, JsonNode valueNode) {
+        boolean flushNow = inLock(lock, () -> {
+            loadedConfigNode().set(key, valueNode);
+            dirty = true;
+            version++;
+            subscriptions.notifyIfChanged(key, valueNode);
+            if (executor == null) {
+                return true;
+            }
+            if (scheduledFlush == null) {
+                scheduledFlush = executor.schedule(writeBehindDelay, this::flushInBackground);
+            }
+            return false;
+        });
+        if (flushNow) {
+            asUnchecked(this::flush);
+        }
+    }
+
+    @Nullable
+    @Override
+    public JsonNode readNode(String key) {
+        return inLock(lock, () -> loadedConfigNode().get(key));
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public <T> Closeable subscribe(String key, Class<T> type, Consumer<? super T> consumer, Executor executor) {
+        return inLock(lock, () -> subscriptions.add(key, loadedConfigNode().get(key), type, consumer, executor, () -> {}));
+    }
+
+    /**
+     * Writes pending changes to the file now.
+     */
+    public void flush() throws IOException {
+        byte[] contents;
+        long sequence;
+        lock.lock();
+        try {
+            closeIfNotNull(scheduledFlush);
+            scheduledFlush = null;
+            if (!dirty) {
+                return;
+            }
+            contents = mapper.writeValueAsBytes(configNode);
+            dirty = false;
+            sequence = ++snapshotSequence;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            fileLock.lock();
+            try {
+                // a later snapshot may have been written by a concurrent flush already
+                if (sequence > writtenSnapshotSequence) {
+                    storeFile.write(contents);
+                    writtenSnapshotSequence = sequence;
+                }
+            } finally {
+                fileLock.unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            inLock(lock, () -> { dirty = true; });
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doStart() {
+        inLock(lock, () -> {
+            executor = executorFactory.createSingleThreadedSchedulingExecutor("var-store");
+            if (dirty) {
+                scheduledFlush = executor.schedule(writeBehindDelay, this::flushInBackground);
+            }
+        });
+    }
+
+    @Override
+    protected void doStop() {
+        SchedulingExecutor stoppedExecutor = inLock(lock, () -> {
+            SchedulingExecutor result = executor;
+            executor = null;
+            return result;
+        });
+        closeIfNotNull(stoppedExecutor);
+        asUnchecked(this::flush);
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            // stays dirty, so the next write or stop will retry
+            logger.error("Failed to write store file {}", storeFile, e);
+        }
+    }
+
+    private ObjectNode loadedConfigNode() {
+        if (configNode == null) {
+            configNode = getAsUnchecked(storeFile::read);
+        }
+        return configNode;
+    }
+
+    @BindingAnnotation
+    @Target({FIELD, PARAMETER, METHOD})
+    @Retention(RUNTIME)
+    @interface WriteBehindDelay {
+    }
+}
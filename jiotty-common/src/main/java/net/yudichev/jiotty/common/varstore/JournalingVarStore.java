@@ -0,0 +1,316 @@
+package net.yudichev.jiotty.common.varstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.inject.BindingAnnotation;
+import net.yudichev.jiotty.common.async.ExecutorFactory;
+import net.yudichev.jiotty.common.async.SchedulingExecutor;
+import net.yudichev.jiotty.common.inject.BaseLifecycleComponent;
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static net.yudichev.jiotty.common.lang.Closeable.closeIfNotNull;
+import static net.yudichev.jiotty.common.lang.Locks.inLock;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
+import static net.yudichev.jiotty.common.varstore.VarStoreFile.mapper;
+
+/**
+ * Appends every saved value as a record to a journal file instead of rewriting the whole store, so the cost of a save does not depend on
+ * the size of the store. The latest value of each key is kept in memory and rebuilt from the journal when the store is opened.
+ * <p>
+ * Each record is {@code [payload length][CRC32 of payload][payload]}, the payload being {@code {"key": ..., "value": ...}} JSON. A record
+ * torn by a crash fails the length or checksum check and is truncated away on open, losing only that last save. When the journal grows
+ * beyond the compaction threshold, it is rewritten with one record per key into a temporary file that atomically replaces the journal -
+ * in the background while started, inline otherwise.
+ * <p>
+ * If there is no journal yet but the JSON store file used by {@link VarStoreImpl} exists, its values are imported on open.
+ */
+public final class JournalingVarStore extends BaseLifecycleComponent implements TreeVarStore {
+    private static final Logger logger = LoggerFactory.getLogger(JournalingVarStore.class);
+
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final ObjectWriter recordWriter = mapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+
+    private final VarStoreFile legacyStoreFile;
+    private final Path legacyStorePath;
+    private final Path journalFile;
+    private final Path journalFileTmp;
+    private final ExecutorFactory executorFactory;
+    private final long compactionThresholdBytes;
+    private final Lock lock = new ReentrantLock();
+    private final VarStoreSubscriptions subscriptions = new VarStoreSubscriptions();
+
+    // guarded by lock
+    private final Map<String, JsonNode> valuesByKey = new LinkedHashMap<>();
+    @Nullable
+    private FileChannel journal;
+    private long compactionTriggerBytes;
+    private boolean compactionScheduled;
+    @Nullable
+    private SchedulingExecutor executor;
+    private volatile long version;
+
+    @Inject
+    public JournalingVarStore(@VarStoreImpl.StoreFile Path storeFile,
+                              ExecutorFactory executorFactory,
+                              @CompactionThresholdBytes long compactionThresholdBytes) {
+        legacyStorePath = checkNotNull(storeFile);
+        legacyStoreFile = new VarStoreFile(storeFile);
+        journalFile = storeFile.resolveSibling(storeFile.getFileName() + ".journal");
+        journalFileTmp = storeFile.resolveSibling(storeFile.getFileName() + ".journal.tmp");
+        this.executorFactory = checkNotNull(executorFactory);
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        logger.info("Using journal file {}", journalFile.toAbsolutePath());
+    }
+
+    @Override
+    public void saveNode(String key, JsonNode valueNode) {
+        byte[] record = encodeRecord(key, valueNode);
+        inLock(lock, () -> asUnchecked(() -> {
+            FileChannel channel = openedJournal();
+            writeFully(channel, record);
+            valuesByKey.put(key, valueNode);
+            version++;
+            subscriptions.notifyIfChanged(key, valueNode);
+            if (channel.size() > compactionTriggerBytes) {
+                if (executor == null) {
+                    tryCompact();
+                } else if (!compactionScheduled) {
+                    compactionScheduled = true;
+                    executor.execute(this::tryCompact);
+                }
+            }
+        }));
+    }
+
+    @Nullable
+    @Override
+    public JsonNode readNode(String key) {
+        return inLock(lock, () -> getAsUnchecked(() -> {
+            openedJournal();
+            return valuesByKey.get(key);
+        }));
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public <T> Closeable subscribe(String key, Class<T> type, Consumer<? super T> consumer, Executor executor) {
+        return inLock(lock, () -> getAsUnchecked(() -> {
+            openedJournal();
+            return subscriptions.add(key, valuesByKey.get(key), type, consumer, executor, () -> {});
+        }));
+    }
+
+    @Override
+    protected void doStart() {
+        inLock(lock, () -> {
+            executor = executorFactory.createSingleThreadedSchedulingExecutor("var-store-journal");
+        });
+    }
+
+    @Override
+    protected void doStop() {
+        SchedulingExecutor stoppedExecutor = inLock(lock, () -> {
+            SchedulingExecutor result = executor;
+            executor = null;
+            return result;
+        });
+        // lets an in-flight compaction finish
+        closeIfNotNull(stoppedExecutor);
+        inLock(lock, () -> asUnchecked(() -> {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+                valuesByKey.clear();
+            }
+        }));
+    }
+
+    private FileChannel openedJournal() throws IOException {
+        if (journal == null) {
+            if (!exists(journalFile)) {
+                createDirectories(journalFile.toAbsolutePath().getParent());
+                if (isRegularFile(legacyStorePath)) {
+                    ObjectNode legacyValues = legacyStoreFile.read();
+                    legacyValues.fields().forEachRemaining(entry -> valuesByKey.put(entry.getKey(), entry.getValue()));
+                    logger.info("Imported {} values from {}", valuesByKey.size(), legacyStoreFile);
+                }
+                writeCompactedJournal();
+            }
+            journal = FileChannel.open(journalFile, READ, WRITE);
+            loadRecords(journal);
+            compactionTriggerBytes = compactionThresholdBytes;
+        }
+        return journal;
+    }
+
+    private void loadRecords(FileChannel channel) throws IOException {
+        valuesByKey.clear();
+        ByteBuffer contents = ByteBuffer.wrap(readAllBytes(journalFile));
+        int recordCount = 0;
+        while (contents.remaining() >= RECORD_HEADER_SIZE) {
+            int recordStart = contents.position();
+            int payloadLength = contents.getInt();
+            int checksum = contents.getInt();
+            if (payloadLength < 0
+                || payloadLength > contents.remaining()
+                || checksum != checksum(contents.array(), contents.position(), payloadLength)) {
+                contents.position(recordStart);
+                break;
+            }
+            JsonNode recordNode = mapper.readTree(contents.array(), contents.position(), payloadLength);
+            valuesByKey.put(recordNode.get("key").asText(), recordNode.get("value"));
+            contents.position(contents.position() + payloadLength);
+            recordCount++;
+        }
+        long validLength = contents.position();
+        if (validLength < channel.size()) {
+            logger.warn("Journal {} has an incomplete or corrupt record at offset {}, truncating {} bytes",
+                        journalFile, validLength, channel.size() - validLength);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        logger.debug("Loaded {} records, {} keys from {}", recordCount, valuesByKey.size(), journalFile);
+    }
+
+    private void tryCompact() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to compact journal {}", journalFile, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the values to a new journal outside the lock, so that saves and reads are not held up by the rewrite. Records
+     * appended in the meantime are copied over under the lock, right before the new journal replaces the old one.
+     */
+    private void compact() throws IOException {
+        Map<String, JsonNode> snapshot;
+        long snapshotJournalSize;
+        lock.lock();
+        try {
+            compactionScheduled = false;
+            if (journal == null) {
+                return;
+            }
+            snapshot = new LinkedHashMap<>(valuesByKey);
+            snapshotJournalSize = journal.size();
+        } finally {
+            lock.unlock();
+        }
+
+        try (FileChannel compactedJournal = FileChannel.open(journalFileTmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            writeRecords(compactedJournal, snapshot);
+            compactedJournal.force(true);
+            lock.lock();
+            try {
+                if (journal == null) {
+                    return;
+                }
+                long sizeBefore = journal.size();
+                long position = snapshotJournalSize;
+                while (position < sizeBefore) {
+                    position += journal.transferTo(position, sizeBefore - position, compactedJournal);
+                }
+                compactedJournal.force(true);
+                // if the move fails, the old journal is reloaded on next access
+                journal.close();
+                journal = null;
+                move(journalFileTmp, journalFile, ATOMIC_MOVE);
+                journal = FileChannel.open(journalFile, READ, WRITE);
+                long sizeAfter = journal.size();
+                journal.position(sizeAfter);
+                // if the live values alone are close to the threshold, don't compact on every save
+                compactionTriggerBytes = Math.max(compactionThresholdBytes, 2 * sizeAfter);
+                logger.debug("Compacted journal {} from {} to {} bytes", journalFile, sizeBefore, sizeAfter);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void writeCompactedJournal() throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFileTmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            writeRecords(channel, valuesByKey);
+            channel.force(true);
+        }
+        move(journalFileTmp, journalFile, ATOMIC_MOVE);
+    }
+
+    private static void writeRecords(FileChannel channel, Map<String, JsonNode> values) throws IOException {
+        for (Map.Entry<String, JsonNode> entry : values.entrySet()) {
+            writeFully(channel, encodeRecord(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static byte[] encodeRecord(String key, JsonNode valueNode) {
+        ObjectNode recordNode = mapper.createObjectNode();
+        recordNode.put("key", key);
+        recordNode.set("value", valueNode);
+        byte[] payload = getAsUnchecked(() -> recordWriter.writeValueAsBytes(recordNode));
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                         .putInt(payload.length)
+                         .putInt(checksum(payload, 0, payload.length))
+                         .put(payload)
+                         .array();
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        var crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @BindingAnnotation
+    @Target({FIELD, PARAMETER, METHOD})
+    @Retention(RUNTIME)
+    @interface CompactionThresholdBytes {
+    }
+}
@@ -0,0 +1,23 @@
+package net.yudichev.jiotty.common.varstore;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+record SimpleVarBinding<T>(VarStore varStore, Class<T> type, String key) implements VarBinding<T> {
+    SimpleVarBinding {
+        checkNotNull(varStore);
+        checkNotNull(type);
+        checkNotNull(key);
+    }
+
+    @Override
+    public Optional<T> get() {
+        return varStore.readValue(type, key);
+    }
+
+    @Override
+    public void set(T value) {
+        varStore.saveValue(key, value);
+    }
+}
@@ -0,0 +1,44 @@
+package net.yudichev.jiotty.common.varstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import javax.annotation.Nullable;
+import java.util.Optional;
+
+import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
+import static net.yudichev.jiotty.common.varstore.VarStoreFile.mapper;
+
+/**
+ * A {@link VarStore} that holds values as JSON trees and counts its writes, which lets {@link CachingVarBinding} decode a value once per
+ * write instead of once per read.
+ */
+interface TreeVarStore extends VarStore {
+    /**
+     * @return the stored node, which is never mutated afterwards, or {@code null}
+     */
+    @Nullable
+    JsonNode readNode(String key);
+
+    void saveNode(String key, JsonNode valueNode);
+
+    /**
+     * @return a number that changes every time a value is saved
+     */
+    long version();
+
+    @Override
+    default void saveValue(String key, Object value) {
+        saveNode(key, mapper.valueToTree(value));
+    }
+
+    @Override
+    default <T> Optional<T> readValue(Class<T> type, String key) {
+        return Optional.ofNullable(readNode(key))
+                       .map(valueNode -> getAsUnchecked(() -> mapper.readerFor(type).readValue(valueNode)));
+    }
+
+    @Override
+    default <T> VarBinding<T> binding(Class<T> type, String key) {
+        return new CachingVarBinding<>(this, type, key);
+    }
+}
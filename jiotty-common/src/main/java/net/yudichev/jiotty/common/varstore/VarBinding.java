@@ -0,0 +1,14 @@
+package net.yudichev.jiotty.common.varstore;
+
+import java.util.Optional;
+
+/**
+ * A value of a given type stored under a given key in a {@link VarStore}.
+ *
+ * @see VarStore#binding(Class, String)
+ */
+public interface VarBinding<T> {
+    Optional<T> get();
+
+    void set(T value);
+}
@@ -1,9 +1,29 @@
 package net.yudichev.jiotty.common.varstore;
 
+import net.yudichev.jiotty.common.lang.Closeable;
+
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 public interface VarStore {
     void saveValue(String key, Object value);
 
     <T> Optional<T> readValue(Class<T> type, String key);
+
+    /**
+     * Implementations provided by this package cache the decoded value in the returned binding until the next write to the store, so
+     * repeated {@link VarBinding#get()} calls are plain memory reads returning the same instance; {@code T} should therefore be immutable.
+     */
+    default <T> VarBinding<T> binding(Class<T> type, String key) {
+        return new SimpleVarBinding<>(this, type, key);
+    }
+
+    /**
+     * Delivers the new value of the key via the given executor every time it changes. Implementations provided by this package see values
+     * saved through the store itself; {@link VarStoreImpl} also sees the file being modified by other processes.
+     *
+     * @return handle that cancels the subscription
+     */
+    <T> Closeable subscribe(String key, Class<T> type, Consumer<? super T> consumer, Executor executor);
 }
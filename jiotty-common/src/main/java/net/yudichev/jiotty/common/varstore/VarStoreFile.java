@@ -0,0 +1,77 @@
+package net.yudichev.jiotty.common.varstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createFile;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * The JSON file backing a {@link VarStore}; not thread safe.
+ */
+final class VarStoreFile {
+    static final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new Jdk8Module())
+            .registerModule(new JavaTimeModule())
+            .registerModule(new GuavaModule())
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Path storeFile;
+    private final Path storeFileTmp;
+
+    VarStoreFile(Path storeFile) {
+        this.storeFile = checkNotNull(storeFile);
+        storeFileTmp = storeFile.resolveSibling("data.tmp");
+    }
+
+    ObjectNode read() throws IOException {
+        if (!isRegularFile(storeFile)) {
+            createDirectories(storeFile.getParent());
+            createFile(storeFile);
+        }
+
+        ObjectNode configNode;
+        byte[] contents = readAllBytes(storeFile);
+        if (contents.length > 0) {
+            configNode = mapper.readValue(contents, ObjectNode.class);
+        } else {
+            configNode = mapper.createObjectNode();
+        }
+
+        return configNode;
+    }
+
+    Path path() {
+        return storeFile;
+    }
+
+    /**
+     * Atomically replaces the file contents, so that a crash never leaves it half written.
+     */
+    void write(byte[] contents) throws IOException {
+        Files.write(storeFileTmp, contents);
+        move(storeFileTmp, storeFile, REPLACE_EXISTING);
+    }
+
+    void write(ObjectNode configNode) throws IOException {
+        write(mapper.writeValueAsBytes(configNode));
+    }
+
+    @Override
+    public String toString() {
+        return storeFile.toAbsolutePath().toString();
+    }
+}
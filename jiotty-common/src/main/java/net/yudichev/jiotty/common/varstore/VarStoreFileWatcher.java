@@ -0,0 +1,73 @@
+package net.yudichev.jiotty.common.varstore;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
+
+/**
+ * Invokes a callback on a dedicated daemon thread whenever a file is created, replaced or modified. Watches the whole parent directory, as
+ * that's the only way to see the file being atomically replaced.
+ */
+final class VarStoreFileWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(VarStoreFileWatcher.class);
+
+    private final Path fileName;
+    private final Runnable onChange;
+    private final WatchService watchService;
+
+    VarStoreFileWatcher(Path file, Runnable onChange) throws IOException {
+        this.onChange = checkNotNull(onChange);
+        Path directory = file.toAbsolutePath().getParent();
+        createDirectories(directory);
+        fileName = file.getFileName();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        new ThreadFactoryBuilder()
+                .setNameFormat("var-store-watcher-%s")
+                .setDaemon(true)
+                .build()
+                .newThread(this::run)
+                .start();
+        logger.debug("Watching {} for changes", file.toAbsolutePath());
+    }
+
+    @Override
+    public void close() {
+        asUnchecked(watchService::close);
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            }
+            boolean fileChanged = watchKey.pollEvents().stream()
+                                          .anyMatch(event -> event.kind() == OVERFLOW || fileName.equals(event.context()));
+            watchKey.reset();
+            if (fileChanged) {
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    logger.error("Failed processing change of {}", fileName, e);
+                }
+            }
+        }
+    }
+}
@@ -1,94 +1,102 @@
 package net.yudichev.jiotty.common.varstore;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.datatype.guava.GuavaModule;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.google.inject.BindingAnnotation;
+import net.yudichev.jiotty.common.lang.Closeable;
 import net.yudichev.jiotty.common.lang.MoreThrowables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.nio.file.Path;
-import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
-import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.ElementType.PARAMETER;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
-import static java.nio.file.Files.createDirectories;
-import static java.nio.file.Files.createFile;
-import static java.nio.file.Files.isRegularFile;
-import static java.nio.file.Files.move;
-import static java.nio.file.Files.readAllBytes;
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static net.yudichev.jiotty.common.lang.Closeable.closeIfNotNull;
 import static net.yudichev.jiotty.common.lang.Locks.inLock;
 
-public final class VarStoreImpl implements VarStore {
+public final class VarStoreImpl implements TreeVarStore {
     private static final Logger logger = LoggerFactory.getLogger(VarStoreImpl.class);
 
-    private static final ObjectMapper mapper = new ObjectMapper()
-            .registerModule(new Jdk8Module())
-            .registerModule(new JavaTimeModule())
-            .registerModule(new GuavaModule())
-            .enable(SerializationFeature.INDENT_OUTPUT);
-
-    private final Path storeFile;
+    private final VarStoreFile storeFile;
     private final Lock lock = new ReentrantLock();
-    private final Path storeFileTmp;
+    private final VarStoreSubscriptions subscriptions = new VarStoreSubscriptions();
+    private volatile long version;
+
+    // guarded by lock
+    @Nullable
+    private VarStoreFileWatcher fileWatcher;
 
     @Inject
     public VarStoreImpl(@StoreFile Path storeFile) {
-        this.storeFile = checkNotNull(storeFile);
-        storeFileTmp = this.storeFile.resolveSibling("data.tmp");
-        logger.info("Using store file {}", storeFile.toAbsolutePath());
+        this.storeFile = new VarStoreFile(storeFile);
+        logger.info("Using store file {}", this.storeFile);
     }
 
     @Override
-    public void saveValue(String key, Object value) {
+    public void saveNode(String key, JsonNode valueNode) {
         inLock(lock, () -> MoreThrowables.asUnchecked(() -> {
-            ObjectNode configNode = readConfig();
+            ObjectNode configNode = storeFile.read();
 
-            configNode.set(key, mapper.valueToTree(value));
-            mapper.writeValue(storeFileTmp.toFile(), configNode);
-            move(storeFileTmp, storeFile, REPLACE_EXISTING);
+            configNode.set(key, valueNode);
+            storeFile.write(configNode);
+            version++;
+            subscriptions.notifyIfChanged(key, valueNode);
         }));
     }
 
+    @Nullable
     @Override
-    public <T> Optional<T> readValue(Class<T> type, String key) {
-        return inLock(lock, () -> MoreThrowables.getAsUnchecked(() -> {
-            ObjectNode configNode = readConfig();
+    public JsonNode readNode(String key) {
+        return inLock(lock, () -> MoreThrowables.getAsUnchecked(() -> storeFile.read().get(key)));
+    }
 
-            return Optional.ofNullable(configNode.get(key))
-                           .map(valueNode -> MoreThrowables.getAsUnchecked(() -> mapper.readerFor(type).readValue(valueNode)));
-        }));
+    /**
+     * Counts writes made through this instance and, while there are subscriptions, modifications of the file made by others.
+     */
+    @Override
+    public long version() {
+        return version;
     }
 
-    private ObjectNode readConfig() throws IOException {
-        if (!isRegularFile(storeFile)) {
-            createDirectories(storeFile.getParent());
-            createFile(storeFile);
-        }
+    /**
+     * While there are subscriptions, the store file is watched for modifications by other processes.
+     */
+    @Override
+    public <T> Closeable subscribe(String key, Class<T> type, Consumer<? super T> consumer, Executor executor) {
+        return inLock(lock, () -> MoreThrowables.getAsUnchecked(() -> {
+            if (fileWatcher == null) {
+                fileWatcher = new VarStoreFileWatcher(storeFile.path(), this::onFileChanged);
+            }
+            return subscriptions.add(key, storeFile.read().get(key), type, consumer, executor, this::onSubscriptionClosed);
+        }));
+    }
 
-        ObjectNode configNode;
-        byte[] contents = readAllBytes(storeFile);
-        if (contents.length > 0) {
-            configNode = mapper.readValue(contents, ObjectNode.class);
-        } else {
-            configNode = mapper.createObjectNode();
-        }
+    private void onSubscriptionClosed() {
+        inLock(lock, () -> {
+            if (subscriptions.isEmpty()) {
+                closeIfNotNull(fileWatcher);
+                fileWatcher = null;
+            }
+        });
+    }
 
-        return configNode;
+    private void onFileChanged() {
+        inLock(lock, () -> MoreThrowables.asUnchecked(() -> {
+            ObjectNode configNode = storeFile.read();
+            version++;
+            subscriptions.keys().forEach(key -> subscriptions.notifyIfChanged(key, configNode.get(key)));
+        }));
     }
 
     @BindingAnnotation
@@ -5,16 +5,30 @@ import net.yudichev.jiotty.common.inject.BindingSpec;
 import net.yudichev.jiotty.common.inject.ExposedKeyModule;
 import net.yudichev.jiotty.common.lang.TypedBuilder;
 
+import javax.annotation.Nullable;
 import javax.inject.Singleton;
 import java.nio.file.Path;
+import java.time.Duration;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 public final class VarStoreModule extends BaseLifecycleComponentModule implements ExposedKeyModule<VarStore> {
     private final BindingSpec<Path> pathSpec;
+    @Nullable
+    private final Duration writeBehindDelay;
+    @Nullable
+    private final Long journalCompactionThresholdBytes;
 
     public VarStoreModule(BindingSpec<Path> pathSpec) {
+        this(pathSpec, null, null);
+    }
+
+    private VarStoreModule(BindingSpec<Path> pathSpec, @Nullable Duration writeBehindDelay, @Nullable Long journalCompactionThresholdBytes) {
         this.pathSpec = checkNotNull(pathSpec);
+        this.writeBehindDelay = writeBehindDelay;
+        this.journalCompactionThresholdBytes = journalCompactionThresholdBytes;
     }
 
     @Override
@@ -22,7 +36,15 @@ public final class VarStoreModule extends BaseLifecycleComponentModule implement
         pathSpec.bind(Path.class)
                 .annotatedWith(VarStoreImpl.StoreFile.class)
                 .installedBy(this::installLifecycleComponentModule);
-        bind(getExposedKey()).to(VarStoreImpl.class).in(Singleton.class);
+        if (writeBehindDelay != null) {
+            bind(Duration.class).annotatedWith(CachingVarStore.WriteBehindDelay.class).toInstance(writeBehindDelay);
+            bind(getExposedKey()).to(registerLifecycleComponent(CachingVarStore.class));
+        } else if (journalCompactionThresholdBytes != null) {
+            bindConstant().annotatedWith(JournalingVarStore.CompactionThresholdBytes.class).to(journalCompactionThresholdBytes);
+            bind(getExposedKey()).to(registerLifecycleComponent(JournalingVarStore.class));
+        } else {
+            bind(getExposedKey()).to(VarStoreImpl.class).in(Singleton.class);
+        }
         expose(getExposedKey());
     }
 
@@ -33,6 +55,10 @@ public final class VarStoreModule extends BaseLifecycleComponentModule implement
     public static final class Builder implements TypedBuilder<ExposedKeyModule<VarStore>> {
 
         private BindingSpec<Path> pathSpec;
+        @Nullable
+        private Duration writeBehindDelay;
+        @Nullable
+        private Long journalCompactionThresholdBytes;
 
         private Builder() {
         }
@@ -42,9 +68,35 @@ public final class VarStoreModule extends BaseLifecycleComponentModule implement
             return this;
         }
 
+        /**
+         * Cache the store in memory and write changes to the file in the background, coalescing all changes made within the given delay.
+         * Requires an {@link net.yudichev.jiotty.common.async.ExecutorFactory} binding.
+         *
+         * @see CachingVarStore
+         */
+        public Builder withWriteBehind(Duration writeBehindDelay) {
+            checkArgument(!writeBehindDelay.isNegative(), "writeBehindDelay must not be negative: %s", writeBehindDelay);
+            checkState(journalCompactionThresholdBytes == null, "write-behind and journal modes are mutually exclusive");
+            this.writeBehindDelay = writeBehindDelay;
+            return this;
+        }
+
+        /**
+         * Append saved values to a journal file next to the configured path instead of rewriting the whole store on every save, compacting
+         * the journal once it grows beyond the given size. Requires an {@link net.yudichev.jiotty.common.async.ExecutorFactory} binding.
+         *
+         * @see JournalingVarStore
+         */
+        public Builder withJournal(long compactionThresholdBytes) {
+            checkArgument(compactionThresholdBytes > 0, "compactionThresholdBytes must be positive: %s", compactionThresholdBytes);
+            checkState(writeBehindDelay == null, "write-behind and journal modes are mutually exclusive");
+            journalCompactionThresholdBytes = compactionThresholdBytes;
+            return this;
+        }
+
         @Override
         public ExposedKeyModule<VarStore> build() {
-            return new VarStoreModule(pathSpec);
+            return new VarStoreModule(pathSpec, writeBehindDelay, journalCompactionThresholdBytes);
         }
     }
 }
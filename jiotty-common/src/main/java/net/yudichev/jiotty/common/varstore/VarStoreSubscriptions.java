@@ -0,0 +1,106 @@
+package net.yudichev.jiotty.common.varstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.Sets;
+import net.yudichev.jiotty.common.lang.Closeable;
+import net.yudichev.jiotty.common.lang.Runnables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
+import static net.yudichev.jiotty.common.varstore.VarStoreFile.mapper;
+
+/**
+ * Subscriptions to the values of a {@link VarStore}. A subscriber is notified only when the stored value differs from the one it has
+ * been notified of last (or that was current when it subscribed), so a change seen both as an in-process save and as a file modification
+ * is delivered once.
+ */
+final class VarStoreSubscriptions {
+    private static final Logger logger = LoggerFactory.getLogger(VarStoreSubscriptions.class);
+
+    private final Map<String, Set<Subscription<?>>> subscriptionsByKey = new ConcurrentHashMap<>();
+
+    <T> Closeable add(String key,
+                      @Nullable JsonNode currentValueNode,
+                      Class<T> type,
+                      Consumer<? super T> consumer,
+                      Executor executor,
+                      Runnable onClose) {
+        var subscription = new Subscription<T>(key, currentValueNode, mapper.readerFor(type), consumer, executor);
+        subscriptionsByKey.compute(key, (k, subscriptions) -> {
+            Set<Subscription<?>> result = subscriptions == null ? Sets.newConcurrentHashSet() : subscriptions;
+            result.add(subscription);
+            return result;
+        });
+        return Closeable.idempotent(() -> {
+            subscription.closed = true;
+            subscriptionsByKey.computeIfPresent(key, (k, subscriptions) -> {
+                subscriptions.remove(subscription);
+                return subscriptions.isEmpty() ? null : subscriptions;
+            });
+            onClose.run();
+        });
+    }
+
+    boolean isEmpty() {
+        return subscriptionsByKey.isEmpty();
+    }
+
+    Set<String> keys() {
+        return subscriptionsByKey.keySet();
+    }
+
+    /**
+     * Must be called in the order the values were stored, i.e. under the store lock.
+     */
+    void notifyIfChanged(String key, @Nullable JsonNode valueNode) {
+        if (valueNode == null) {
+            return;
+        }
+        Set<Subscription<?>> subscriptions = subscriptionsByKey.get(key);
+        if (subscriptions != null) {
+            subscriptions.forEach(subscription -> subscription.deliverIfChanged(valueNode));
+        }
+    }
+
+    private static final class Subscription<T> {
+        private final String key;
+        private final ObjectReader reader;
+        private final Consumer<? super T> consumer;
+        private final Executor executor;
+        private volatile boolean closed;
+        // guarded by this
+        @Nullable
+        private JsonNode lastValueNode;
+
+        Subscription(String key, @Nullable JsonNode currentValueNode, ObjectReader reader, Consumer<? super T> consumer, Executor executor) {
+            this.key = checkNotNull(key);
+            lastValueNode = currentValueNode;
+            this.reader = checkNotNull(reader);
+            this.consumer = checkNotNull(consumer);
+            this.executor = checkNotNull(executor);
+        }
+
+        synchronized void deliverIfChanged(JsonNode valueNode) {
+            if (valueNode.equals(lastValueNode)) {
+                return;
+            }
+            lastValueNode = valueNode;
+            executor.execute(Runnables.guarded(logger, "notifying subscriber of var store key " + key, () -> {
+                if (!closed) {
+                    T value = getAsUnchecked(() -> reader.readValue(valueNode));
+                    consumer.accept(value);
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package net.yudichev.jiotty.common.async;
+
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+class ExecutorFactoryImplTest {
+    private ExecutorRegistryImpl registry;
+    private ExecutorFactoryImpl factory;
+
+    @BeforeEach
+    void setUp() {
+        registry = new ExecutorRegistryImpl();
+        factory = new ExecutorFactoryImpl(registry, Duration.ofMillis(50));
+    }
+
+    @Test
+    void registersLiveExecutorsUntilClosed() {
+        SchedulingExecutor executorB = factory.createSingleThreadedSchedulingExecutor("b");
+        SchedulingExecutor executorA = factory.createSingleThreadedSchedulingExecutor("a");
+
+        assertThat(registry.getMetrics().stream().map(ExecutorMetrics::getThreadNameBase).toList(), is(List.of("a", "b")));
+
+        executorA.close();
+        executorB.close();
+        assertThat(registry.getMetrics(), is(empty()));
+    }
+
+    @Test
+    void reportsQueueDepthTimersAndCurrentTask() throws Exception {
+        SchedulingExecutor executor = factory.createSingleThreadedSchedulingExecutor("test");
+        var taskStarted = new CountDownLatch(1);
+        var releaseTask = new CountDownLatch(1);
+        try {
+            executor.execute(new BlockingTask(taskStarted, releaseTask));
+            taskStarted.await(5, SECONDS);
+            executor.execute(() -> {});
+            executor.execute(() -> {});
+            Closeable timer = executor.schedule(Duration.ofHours(1), () -> {});
+
+            ExecutorMetrics metrics = registry.getMetrics().getFirst();
+            assertThat(metrics.getQueuedTaskCount(), is(2));
+            assertThat(metrics.getScheduledTimerCount(), is(1));
+            assertThat(metrics.getCurrentTask().orElseThrow(), is("blocking task"));
+            assertThat(registry.dump(), containsString("test: queued=2, timers=1"));
+
+            timer.close();
+            releaseTask.countDown();
+            executor.submit(() -> {}).get(5, SECONDS);
+
+            metrics = registry.getMetrics().getFirst();
+            assertThat(metrics.getQueuedTaskCount(), is(0));
+            assertThat(metrics.getScheduledTimerCount(), is(0));
+            assertThat(metrics.getCurrentTask().isPresent(), is(false));
+            assertThat(metrics.getExecutedTaskCount(), is(4L));
+            assertThat(metrics.getWaitTime().count(), is(4L));
+            assertThat(metrics.getExecutionTime().max(), greaterThanOrEqualTo(Duration.ZERO));
+        } finally {
+            releaseTask.countDown();
+            executor.close();
+        }
+    }
+
+    @Test
+    void countsSlowTasks() throws Exception {
+        SchedulingExecutor executor = factory.createSingleThreadedSchedulingExecutor("test");
+        try {
+            executor.submit(() -> asUnchecked(() -> Thread.sleep(100))).get(5, SECONDS);
+            executor.submit(() -> {}).get(5, SECONDS);
+
+            ExecutorMetrics metrics = registry.getMetrics().getFirst();
+            assertThat(metrics.getSlowTaskCount(), is(1L));
+            assertThat(metrics.getExecutionTime().max(), greaterThanOrEqualTo(Duration.ofMillis(100)));
+        } finally {
+            executor.close();
+        }
+    }
+
+    private record BlockingTask(CountDownLatch taskStarted, CountDownLatch releaseTask) implements Runnable {
+        @Override
+        public void run() {
+            taskStarted.countDown();
+            asUnchecked(() -> releaseTask.await(5, SECONDS));
+        }
+
+        @Override
+        public String toString() {
+            return "blocking task";
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.yudichev.jiotty.common.async;
+
+import com.google.inject.Guice;
+import com.google.inject.TypeLiteral;
+import net.yudichev.jiotty.common.inject.LifecycleComponent;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.sameInstance;
+
+class ExecutorModuleTest {
+    @Test
+    void registersSharedPoolFactoryAsLifecycleComponent() {
+        var injector = Guice.createInjector(ExecutorModule.builder().withSharedWorkerPool(2).build());
+
+        var factory = injector.getInstance(ExecutorFactory.class);
+
+        assertThat(injector.findBindingsByType(new TypeLiteral<LifecycleComponent>() {}).stream()
+                           .map(binding -> binding.getProvider().get())
+                           .toList(),
+                   contains(sameInstance(factory)));
+    }
+
+    @Test
+    void registersVirtualThreadFactoryAsLifecycleComponent() {
+        var injector = Guice.createInjector(ExecutorModule.builder().withVirtualThreads().build());
+
+        var factory = injector.getInstance(ExecutorFactory.class);
+
+        assertThat(injector.findBindingsByType(new TypeLiteral<LifecycleComponent>() {}).stream()
+                           .map(binding -> binding.getProvider().get())
+                           .toList(),
+                   contains(sameInstance(factory)));
+    }
+}
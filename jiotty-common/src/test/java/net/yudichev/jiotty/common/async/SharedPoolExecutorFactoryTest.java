@@ -0,0 +1,226 @@
+package net.yudichev.jiotty.common.async;
+
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SharedPoolExecutorFactoryTest {
+    private SharedPoolExecutorFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        factory = new SharedPoolExecutorFactory(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.close();
+    }
+
+    @Test
+    void executesTasksOfOneLaneSeriallyInOrder() throws Exception {
+        var executor = factory.createSingleThreadedSchedulingExecutor("lane");
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        AtomicInteger concurrentTasks = new AtomicInteger();
+        AtomicInteger maxConcurrentTasks = new AtomicInteger();
+        IntStream.range(0, 1000).forEach(i -> executor.execute(() -> {
+            maxConcurrentTasks.accumulateAndGet(concurrentTasks.incrementAndGet(), Math::max);
+            executed.add(i);
+            concurrentTasks.decrementAndGet();
+        }));
+
+        executor.submit(() -> {}).get(5, SECONDS);
+
+        assertThat(executed, is(IntStream.range(0, 1000).boxed().collect(toList())));
+        assertThat(maxConcurrentTasks.get(), is(1));
+        executor.close();
+    }
+
+    @Test
+    void tasksSeeLaneThreadName() throws Exception {
+        var executor = factory.createSingleThreadedSchedulingExecutor("myLane");
+
+        assertThat(executor.submit(() -> Thread.currentThread().getName()).get(5, SECONDS), startsWith("myLane/"));
+        executor.close();
+    }
+
+    @Test
+    void executesScheduledTask() throws Exception {
+        var executor = factory.createSingleThreadedSchedulingExecutor("lane");
+        var latch = new CountDownLatch(1);
+
+        executor.schedule(Duration.ofMillis(30), latch::countDown);
+
+        assertThat(latch.await(5, SECONDS), is(true));
+        executor.close();
+    }
+
+    @Test
+    void executesFixedRateTaskRepeatedlyUntilCancelled() throws Exception {
+        var executor = factory.createSingleThreadedSchedulingExecutor("lane");
+        var latch = new CountDownLatch(3);
+        AtomicInteger count = new AtomicInteger();
+
+        Closeable handle = executor.scheduleAtFixedRate(Duration.ofMillis(20), () -> {
+            count.incrementAndGet();
+            latch.countDown();
+        });
+
+        assertThat(latch.await(5, SECONDS), is(true));
+        handle.close();
+        int countAfterCancel = executor.submit(count::get).get(5, SECONDS);
+        Thread.sleep(100);
+        assertThat(count.get(), is(countAfterCancel));
+        executor.close();
+    }
+
+    @Test
+    void cancelledScheduledTaskDoesNotRun() throws Exception {
+        var executor = factory.createSingleThreadedSchedulingExecutor("lane");
+        AtomicInteger count = new AtomicInteger();
+
+        executor.schedule(Duration.ofMillis(30), count::incrementAndGet).close();
+
+        Thread.sleep(100);
+        assertThat(count.get(), is(0));
+        executor.close();
+    }
+
+    @Test
+    void doesNotRetainFiredOrCancelledHandles() throws Exception {
+        var executor = (InstrumentedSchedulingExecutor) factory.createSingleThreadedSchedulingExecutor("lane");
+        var latch = new CountDownLatch(1000);
+
+        IntStream.range(0, 1000).forEach(i -> executor.schedule(Duration.ofMillis(500), latch::countDown));
+        List<Closeable> cancelledHandles = IntStream.range(0, 1000)
+                                                    .mapToObj(i -> executor.schedule(Duration.ofHours(1), () -> {}))
+                                                    .collect(toList());
+        assertThat(executor.getMetrics().getScheduledTimerCount(), is(2000));
+
+        cancelledHandles.forEach(Closeable::close);
+        assertThat(latch.await(5, SECONDS), is(true));
+        executor.submit(() -> {}).get(5, SECONDS);
+
+        assertThat(executor.getMetrics().getScheduledTimerCount(), is(0));
+        executor.close();
+    }
+
+    @Test
+    void reportsSubmittedAndScheduledTasksByTheirOwnNames() throws Exception {
+        var executor = (InstrumentedSchedulingExecutor) factory.createSingleThreadedSchedulingExecutor("lane");
+        var taskStarted = new CountDownLatch(1);
+        var releaseTask = new CountDownLatch(1);
+
+        var result = executor.submit((Callable<Boolean>) new BlockingTask(taskStarted, releaseTask));
+        assertThat(taskStarted.await(5, SECONDS), is(true));
+        assertThat(executor.getMetrics().getCurrentTask().orElseThrow(), containsString("blocking task"));
+        releaseTask.countDown();
+        result.get(5, SECONDS);
+
+        var scheduledTaskStarted = new CountDownLatch(1);
+        var releaseScheduledTask = new CountDownLatch(1);
+        executor.schedule(Duration.ofMillis(1), (Runnable) new BlockingTask(scheduledTaskStarted, releaseScheduledTask));
+        assertThat(scheduledTaskStarted.await(5, SECONDS), is(true));
+        assertThat(executor.getMetrics().getCurrentTask().orElseThrow(), containsString("blocking task"));
+        releaseScheduledTask.countDown();
+        executor.close();
+    }
+
+    @Test
+    void closeCompletesQueuedTasksAndRejectsNewOnes() {
+        var executor = factory.createSingleThreadedSchedulingExecutor("lane");
+        AtomicInteger count = new AtomicInteger();
+        IntStream.range(0, 100).forEach(i -> executor.execute(count::incrementAndGet));
+
+        executor.close();
+
+        assertThat(count.get(), is(100));
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(count::incrementAndGet));
+    }
+
+    @Test
+    void closeInterruptsTaskStillRunningAfterGracePeriodAndReleasesWorker() throws Exception {
+        ExecutorService workerPool = Executors.newSingleThreadExecutor();
+        try (var timer = new HashedWheelTimer("test-timer", Duration.ofMillis(10), 16)) {
+            var executor = new SharedPoolSchedulingExecutor(workerPool, timer, "blocked", Duration.ofSeconds(10), ignored -> {}, Duration.ofMillis(100));
+            var started = new CountDownLatch(1);
+            var interrupted = new CountDownLatch(1);
+            executor.execute(() -> {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            });
+            CompletableFuture<Void> queuedTask = executor.submit(() -> {});
+            assertThat(started.await(5, SECONDS), is(true));
+
+            executor.close();
+
+            assertThat(interrupted.await(5, SECONDS), is(true));
+            assertThat(queuedTask.isCancelled(), is(true));
+            var otherLane = new SharedPoolSchedulingExecutor(workerPool, timer, "other", Duration.ofSeconds(10), ignored -> {});
+            assertThat(otherLane.submit(() -> Thread.currentThread().isInterrupted()).get(5, SECONDS), is(false));
+            otherLane.close();
+        } finally {
+            workerPool.shutdown();
+        }
+    }
+
+    @Test
+    void stopReleasesThreadsAndRestartCreatesNewOnes() throws Exception {
+        factory.start();
+        var executor = factory.createSingleThreadedSchedulingExecutor("lane");
+        Thread workerThread = executor.submit(Thread::currentThread).get(5, SECONDS);
+
+        factory.stop();
+        workerThread.join(SECONDS.toMillis(5));
+        assertThat(workerThread.isAlive(), is(false));
+
+        factory.start();
+        var newExecutor = factory.createSingleThreadedSchedulingExecutor("lane");
+        assertThat(newExecutor.submit(() -> 42).get(5, SECONDS), is(42));
+        newExecutor.close();
+    }
+
+    private record BlockingTask(CountDownLatch taskStarted, CountDownLatch releaseTask) implements Callable<Boolean>, Runnable {
+        @Override
+        public Boolean call() throws InterruptedException {
+            taskStarted.countDown();
+            return releaseTask.await(5, SECONDS);
+        }
+
+        @Override
+        public void run() {
+            asUnchecked(this::call);
+        }
+
+        @Override
+        public String toString() {
+            return "blocking task";
+        }
+    }
+}
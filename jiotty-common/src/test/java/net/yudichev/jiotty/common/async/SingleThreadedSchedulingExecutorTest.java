@@ -0,0 +1,158 @@
+package net.yudichev.jiotty.common.async;
+
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleThreadedSchedulingExecutorTest {
+    private SingleThreadedSchedulingExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new SingleThreadedSchedulingExecutor("test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void executesTasksInOrderOnNamedThread() throws Exception {
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        IntStream.range(0, 1000).forEach(i -> executor.execute(() -> executed.add(i)));
+
+        assertThat(executor.submit(() -> Thread.currentThread().getName()).get(5, SECONDS), startsWith("test-"));
+        assertThat(executed, is(IntStream.range(0, 1000).boxed().collect(toList())));
+    }
+
+    @Test
+    void submitCompletesFutureWithResultOrFailure() throws Exception {
+        assertThat(executor.submit(() -> 42).get(5, SECONDS), is(42));
+
+        CompletableFuture<Object> failedFuture = executor.submit(() -> {
+            throw new IllegalStateException("oops");
+        });
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> failedFuture.get(5, SECONDS));
+        assertThat(exception.getCause(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    void survivesFailingTask() throws Exception {
+        executor.execute(() -> {
+            throw new IllegalStateException("oops");
+        });
+
+        assertThat(executor.submit(() -> 1).get(5, SECONDS), is(1));
+    }
+
+    @Test
+    void executesScheduledTasksInTriggerTimeOrder() throws Exception {
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        var latch = new CountDownLatch(3);
+        executor.schedule(Duration.ofMillis(60), () -> {
+            executed.add(3);
+            latch.countDown();
+        });
+        executor.schedule(Duration.ofMillis(20), () -> {
+            executed.add(1);
+            latch.countDown();
+        });
+        executor.schedule(Duration.ofMillis(40), () -> {
+            executed.add(2);
+            latch.countDown();
+        });
+
+        assertThat(latch.await(5, SECONDS), is(true));
+        assertThat(executed, is(List.of(1, 2, 3)));
+    }
+
+    @Test
+    void cancelledScheduledTaskDoesNotRun() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        Closeable handle = executor.schedule(Duration.ofMillis(30), count::incrementAndGet);
+        executor.schedule(Duration.ofMillis(10), handle::close);
+
+        Thread.sleep(100);
+        assertThat(count.get(), is(0));
+    }
+
+    @Test
+    void executesFixedRateTaskRepeatedlyUntilCancelled() throws Exception {
+        var latch = new CountDownLatch(3);
+        AtomicInteger count = new AtomicInteger();
+
+        Closeable handle = executor.scheduleAtFixedRate(Duration.ofMillis(10), () -> {
+            count.incrementAndGet();
+            latch.countDown();
+        });
+
+        assertThat(latch.await(5, SECONDS), is(true));
+        handle.close();
+        int countAfterCancel = executor.submit(count::get).get(5, SECONDS);
+        Thread.sleep(50);
+        assertThat(count.get(), is(countAfterCancel));
+    }
+
+    @Test
+    void closeCompletesQueuedTasksCancelsTimersAndRejectsNewTasks() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        IntStream.range(0, 100).forEach(i -> executor.execute(count::incrementAndGet));
+        executor.schedule(Duration.ofMillis(10), count::incrementAndGet);
+
+        executor.close();
+        Thread.sleep(50);
+
+        assertThat(count.get(), is(100));
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(count::incrementAndGet));
+        assertThrows(RejectedExecutionException.class, () -> executor.schedule(Duration.ZERO, count::incrementAndGet));
+    }
+
+    @Test
+    void closeInterruptsTaskStillRunningAfterGracePeriodAndDropsQueuedTasks() throws Exception {
+        var blockedExecutor = new SingleThreadedSchedulingExecutor("test-blocked", Duration.ofSeconds(10), ignored -> {}, Duration.ofMillis(100));
+        var started = new CountDownLatch(1);
+        var interrupted = new CountDownLatch(1);
+        blockedExecutor.execute(() -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        CompletableFuture<Void> queuedTask = blockedExecutor.submit(() -> {});
+        assertThat(started.await(5, SECONDS), is(true));
+
+        blockedExecutor.close();
+
+        assertThat(interrupted.await(5, SECONDS), is(true));
+        assertThat(queuedTask.isCancelled(), is(true));
+    }
+
+    @Test
+    void canBeClosedFromOwnTask() throws Exception {
+        executor.submit(() -> executor.close()).get(5, SECONDS);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+    }
+}
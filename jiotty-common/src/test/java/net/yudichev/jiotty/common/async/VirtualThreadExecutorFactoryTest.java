@@ -0,0 +1,83 @@
+package net.yudichev.jiotty.common.async;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static net.yudichev.jiotty.common.lang.CompletableFutures.toFutureOfList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class VirtualThreadExecutorFactoryTest {
+    private VirtualThreadExecutorFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        factory = new VirtualThreadExecutorFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.close();
+    }
+
+    @Test
+    void runsTasksOnVirtualThreads() throws Exception {
+        var executor = factory.createSingleThreadedSchedulingExecutor("lane");
+
+        assertThat(executor.submit(() -> Thread.currentThread().isVirtual()).get(5, SECONDS), is(true));
+        executor.close();
+    }
+
+    @Test
+    void blockingTaskInOneExecutorDoesNotSerialiseOthers() throws Exception {
+        List<SchedulingExecutor> executors = IntStream.range(0, 200)
+                                                      .mapToObj(i -> factory.createSingleThreadedSchedulingExecutor("lane-" + i))
+                                                      .collect(toList());
+
+        long startNanos = System.nanoTime();
+        executors.stream()
+                 .map(executor -> executor.submit(() -> {
+                     Thread.sleep(200);
+                     return null;
+                 }))
+                 .collect(toFutureOfList())
+                 .get(10, SECONDS);
+
+        // 200 executors sleeping 200ms each would take 40 seconds if serialised
+        assertThat(NANOSECONDS.toSeconds(System.nanoTime() - startNanos), lessThan(5L));
+        executors.forEach(SchedulingExecutor::close);
+    }
+
+    @Test
+    void executesTasksOfOneExecutorSeriallyInOrder() throws Exception {
+        var executor = factory.createSingleThreadedSchedulingExecutor("lane");
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        AtomicInteger concurrentTasks = new AtomicInteger();
+        AtomicInteger maxConcurrentTasks = new AtomicInteger();
+
+        List<CompletableFuture<Void>> futures = IntStream.range(0, 100)
+                                                         .mapToObj(i -> executor.submit(() -> {
+                                                             maxConcurrentTasks.accumulateAndGet(concurrentTasks.incrementAndGet(), Math::max);
+                                                             Thread.yield();
+                                                             executed.add(i);
+                                                             concurrentTasks.decrementAndGet();
+                                                         }))
+                                                         .collect(toList());
+        futures.get(futures.size() - 1).get(5, SECONDS);
+
+        assertThat(executed, is(IntStream.range(0, 100).boxed().collect(toList())));
+        assertThat(maxConcurrentTasks.get(), is(1));
+        executor.close();
+    }
+}
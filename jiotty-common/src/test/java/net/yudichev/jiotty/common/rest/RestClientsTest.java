@@ -0,0 +1,249 @@
+package net.yudichev.jiotty.common.rest;
+
+import com.google.common.reflect.TypeToken;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Call;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNullElse;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RestClientsTest {
+    private HttpServer server;
+    private OkHttpClient client;
+    private final Queue<Integer> responseCodes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final Queue<Long> requestNanos = new ConcurrentLinkedQueue<>();
+    private volatile String responseBody = "{}";
+    private volatile String retryAfter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requestCount.incrementAndGet();
+            requestNanos.add(System.nanoTime());
+            byte[] body = responseBody.getBytes(UTF_8);
+            int responseCode = requireNonNullElse(responseCodes.poll(), 200);
+            if (retryAfter != null && responseCode != 200) {
+                exchange.getResponseHeaders().add("Retry-After", retryAfter);
+            }
+            exchange.sendResponseHeaders(responseCode, body.length);
+            try (var out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        client = RestClients.newClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        RestClients.setMetrics(HttpClientMetrics.NOOP);
+        RestClients.setRetryBudget(RetryBudget.DEFAULT_MAX_RETRIES, RetryBudget.DEFAULT_RETRIES_PER_CALL);
+        RestClients.setMaxRequests(SharedHttpClient.MAX_REQUESTS);
+        RestClients.setMaxRequestsPerHost(SharedHttpClient.MAX_REQUESTS_PER_HOST);
+        RestClients.shutdown(client);
+        server.stop(0);
+    }
+
+    @Test
+    void decodesResponseOfGenericType() throws Exception {
+        responseBody = "{\"a\": [1, 2], \"b\": []}";
+
+        Map<String, List<Integer>> result = RestClients.call(newCall(), new TypeToken<Map<String, List<Integer>>>() {}, 0).get(5, SECONDS);
+
+        assertThat(result, is(Map.of("a", List.of(1, 2), "b", List.of())));
+    }
+
+    @Test
+    void parseFailureReportsBeginningOfResponse() {
+        responseBody = "not json" + "x".repeat(5000);
+
+        var exception = assertThrows(ExecutionException.class, () -> RestClients.call(newCall(), Map.class, 0).get(5, SECONDS));
+
+        assertThat(exception.getCause().getMessage(), containsString("Failed parsing response not json"));
+        assertThat(exception.getCause().getMessage(), endsWith("..."));
+    }
+
+    @Test
+    void retriesIdempotentCallOnServiceUnavailable() throws Exception {
+        responseCodes.add(503);
+        responseCodes.add(503);
+
+        RestClients.call(newCall(), Map.class, fastRetries()).get(5, SECONDS);
+
+        assertThat(requestCount.get(), is(3));
+    }
+
+    @Test
+    void doesNotRetryNonIdempotentCall() {
+        responseCodes.add(503);
+        var call = client.newCall(new Request.Builder().url(url()).post(RequestBody.create(new byte[0])).build());
+
+        var exception = assertThrows(ExecutionException.class, () -> RestClients.call(call, Map.class, fastRetries()).get(5, SECONDS));
+
+        assertThat(exception.getCause().getMessage(), containsString("Response code 503"));
+        assertThat(requestCount.get(), is(1));
+    }
+
+    @Test
+    void givesUpWhenRetriesAreExhausted() {
+        responseCodes.addAll(List.of(503, 503, 503));
+
+        assertThrows(ExecutionException.class, () -> RestClients.call(newCall(), Map.class, fastRetries().withMaxRetries(1)).get(5, SECONDS));
+
+        assertThat(requestCount.get(), is(2));
+    }
+
+    @Test
+    void stopsRetryingWhenRetryBudgetIsExhausted() {
+        RestClients.setRetryBudget(2, 0);
+        responseCodes.addAll(List.of(503, 503, 503, 503));
+
+        assertThrows(ExecutionException.class, () -> RestClients.call(newCall(), Map.class, fastRetries().withMaxRetries(5)).get(5, SECONDS));
+        assertThat(requestCount.get(), is(3));
+
+        assertThrows(ExecutionException.class, () -> RestClients.call(newCall(), Map.class, fastRetries().withMaxRetries(5)).get(5, SECONDS));
+        assertThat(requestCount.get(), is(4));
+    }
+
+    @Test
+    void waitsForRetryAfterBeforeRetrying() throws Exception {
+        responseCodes.add(503);
+        retryAfter = "1";
+
+        RestClients.call(newCall(), Map.class, fastRetries()).get(5, SECONDS);
+
+        assertThat(requestCount.get(), is(2));
+        long firstRequestNanos = requestNanos.remove();
+        assertThat(requestNanos.remove() - firstRequestNanos, is(greaterThanOrEqualTo(SECONDS.toNanos(1))));
+    }
+
+    @Test
+    void doesNotRetryWhenRetryAfterExceedsMaxInterval() {
+        responseCodes.add(503);
+        retryAfter = "60";
+
+        var exception = assertThrows(ExecutionException.class, () -> RestClients.call(newCall(), Map.class, fastRetries()).get(5, SECONDS));
+
+        assertThat(exception.getCause().getMessage(), containsString("Response code 503"));
+        assertThat(requestCount.get(), is(1));
+    }
+
+    @Test
+    void reportsMetricsPerHost() throws Exception {
+        var metrics = new AggregatingHttpClientMetrics();
+        RestClients.setMetrics(metrics);
+        responseCodes.add(503);
+
+        RestClients.call(newCall(), Map.class, fastRetries()).get(5, SECONDS);
+
+        // the call ends when its response body is closed, which may happen after the result is delivered
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (totalCallCount(metrics) < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        var stats = metrics.snapshot().get("localhost");
+        assertThat(stats.callCountsByStatusCode(), is(Map.of(200, 1L, 503, 1L)));
+        assertThat(stats.retryCount(), is(1L));
+        assertThat(stats.failedCallCount(), is(0L));
+        assertThat(stats.timeToFirstByte().count(), is(2L));
+        assertThat(stats.connectTime().count(), is(greaterThanOrEqualTo(1L)));
+    }
+
+    @Test
+    void clientsShareDispatcherAndConnectionPool() {
+        var client1 = RestClients.newClient();
+        var client2 = RestClients.newClient(builder -> builder.readTimeout(Duration.ZERO));
+
+        assertThat(client1.dispatcher(), is(sameInstance(client2.dispatcher())));
+        assertThat(client1.connectionPool(), is(sameInstance(client2.connectionPool())));
+        assertThat(client1.dispatcher().getMaxRequestsPerHost(), is(SharedHttpClient.MAX_REQUESTS_PER_HOST));
+        assertThat(client2.readTimeoutMillis(), is(0));
+    }
+
+    @Test
+    void setsSharedDispatcherLimits() {
+        RestClients.setMaxRequests(64);
+        RestClients.setMaxRequestsPerHost(10);
+
+        assertThat(client.dispatcher().getMaxRequests(), is(64));
+        assertThat(client.dispatcher().getMaxRequestsPerHost(), is(10));
+    }
+
+    @Test
+    void streamingClientDoesNotUseSharedDispatcher() {
+        var streamingClient = RestClients.newStreamingClient(builder -> {});
+
+        assertThat(streamingClient.dispatcher(), is(not(sameInstance(client.dispatcher()))));
+        assertThat(streamingClient.connectionPool(), is(sameInstance(client.connectionPool())));
+        assertThat(streamingClient.readTimeoutMillis(), is(0));
+
+        RestClients.shutdown(streamingClient);
+        assertThat(streamingClient.dispatcher().executorService().isShutdown(), is(true));
+    }
+
+    @Test
+    void shutdownKeepsSharedDispatcherRunning() {
+        var client = RestClients.newClient();
+
+        RestClients.shutdown(client);
+
+        assertThat(client.dispatcher().executorService().isShutdown(), is(false));
+    }
+
+    @Test
+    void shutdownReleasesCustomDispatcher() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        var client = RestClients.newClient(builder -> builder.dispatcher(new Dispatcher(executor)));
+
+        RestClients.shutdown(client);
+
+        assertThat(executor.isShutdown(), is(true));
+    }
+
+    private Call newCall() {
+        return client.newCall(new Request.Builder().url(url()).build());
+    }
+
+    private static long totalCallCount(AggregatingHttpClientMetrics metrics) {
+        var stats = metrics.snapshot().get("localhost");
+        return stats == null ? 0 : stats.totalTime().count();
+    }
+
+    private String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    private static RestRetryPolicy fastRetries() {
+        return RestRetryPolicy.builder().setInitialInterval(Duration.ofMillis(1)).build();
+    }
+}
@@ -0,0 +1,170 @@
+package net.yudichev.jiotty.common.rest;
+
+import com.google.common.reflect.TypeToken;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RestResponseCacheTest {
+    private static final TypeToken<Map<String, Integer>> RESPONSE_TYPE = new TypeToken<>() {};
+    private static final Duration TTL = Duration.ofMinutes(1);
+    private static final Duration STALE_WHILE_REVALIDATE = Duration.ofMinutes(1);
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong nanoTime = new AtomicLong();
+    private volatile CountDownLatch responsesReleased = new CountDownLatch(0);
+    private volatile int responseCode = 200;
+    private HttpServer server;
+    private OkHttpClient client;
+    private RestResponseCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            int requestNumber = requestCount.incrementAndGet();
+            try {
+                responsesReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("{\"request\": " + requestNumber + "}").getBytes(UTF_8);
+            exchange.sendResponseHeaders(responseCode, body.length);
+            try (var out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        client = RestClients.newClient();
+        cache = new RestResponseCache(RestCachePolicy.builder()
+                                                     .setTimeToLive(TTL)
+                                                     .setStaleWhileRevalidate(STALE_WHILE_REVALIDATE)
+                                                     .build(),
+                                      nanoTime::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RestClients.shutdown(client);
+        server.stop(0);
+    }
+
+    @Test
+    void concurrentIdenticalCallsShareOneRequest() throws Exception {
+        responsesReleased = new CountDownLatch(1);
+
+        List<CompletableFuture<Map<String, Integer>>> results = IntStream.range(0, 10)
+                                                                     .mapToObj(i -> cache.call(get(), RESPONSE_TYPE))
+                                                                     .collect(toList());
+        responsesReleased.countDown();
+
+        for (var result : results) {
+            assertThat(result.get(5, SECONDS), is(Map.of("request", 1)));
+        }
+        assertThat(requestCount.get(), is(1));
+    }
+
+    @Test
+    void callerCancellingItsResultDoesNotAffectOthers() throws Exception {
+        responsesReleased = new CountDownLatch(1);
+        var cancelledResult = cache.call(get(), RESPONSE_TYPE);
+        var otherResult = cache.call(get(), RESPONSE_TYPE);
+
+        cancelledResult.cancel(false);
+        responsesReleased.countDown();
+
+        assertThat(otherResult.get(5, SECONDS), is(Map.of("request", 1)));
+        assertThat(callAndGet(), is(Map.of("request", 1)));
+        assertThat(requestCount.get(), is(1));
+    }
+
+    @Test
+    void reloadsAfterExpiry() throws Exception {
+        assertThat(callAndGet(), is(Map.of("request", 1)));
+
+        nanoTime.addAndGet(TTL.toNanos());
+        assertThat(callAndGet(), is(Map.of("request", 1)));
+
+        nanoTime.addAndGet(STALE_WHILE_REVALIDATE.toNanos() + 1);
+        assertThat(callAndGet(), is(Map.of("request", 2)));
+    }
+
+    @Test
+    void returnsStaleResponseWhileRevalidating() throws Exception {
+        callAndGet();
+        nanoTime.addAndGet(TTL.toNanos() + 1);
+        responsesReleased = new CountDownLatch(1);
+
+        assertThat(callAndGet(), is(Map.of("request", 1)));
+        assertThat(callAndGet(), is(Map.of("request", 1)));
+        responsesReleased.countDown();
+
+        awaitResponse(Map.of("request", 2));
+        assertThat(requestCount.get(), is(2));
+    }
+
+    @Test
+    void doesNotCacheFailures() throws Exception {
+        responseCode = 404;
+        assertThrows(ExecutionException.class, this::callAndGet);
+
+        responseCode = 200;
+        assertThat(callAndGet(), is(Map.of("request", 2)));
+    }
+
+    @Test
+    void doesNotCacheNonIdempotentCalls() throws Exception {
+        var post = client.newCall(new Request.Builder().url(url()).post(RequestBody.create(new byte[0])).build());
+        cache.call(post, RESPONSE_TYPE).get(5, SECONDS);
+
+        callAndGet();
+
+        assertThat(requestCount.get(), is(2));
+    }
+
+    private Map<String, Integer> callAndGet() throws Exception {
+        return cache.call(get(), RESPONSE_TYPE).get(5, SECONDS);
+    }
+
+    private void awaitResponse(Map<String, Integer> expectedResponse) throws Exception {
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (!callAndGet().equals(expectedResponse) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(callAndGet(), is(expectedResponse));
+    }
+
+    private Call get() {
+        return client.newCall(new Request.Builder().url(url()).build());
+    }
+
+    private String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+}
@@ -0,0 +1,89 @@
+package net.yudichev.jiotty.common.varstore;
+
+import net.yudichev.jiotty.common.async.ExecutorFactoryImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+class CachingVarStoreTest {
+    @TempDir
+    Path tempDir;
+    private Path storeFile;
+
+    @BeforeEach
+    void setUp() {
+        storeFile = tempDir.resolve("data.json");
+    }
+
+    @Test
+    void writesThroughWhenNotStarted() {
+        var varStore = new CachingVarStore(storeFile, new ExecutorFactoryImpl(), Duration.ofHours(1));
+
+        varStore.saveValue("key", "value");
+
+        assertThat(new VarStoreImpl(storeFile).readValue(String.class, "key"), is(Optional.of("value")));
+    }
+
+    @Test
+    void servesReadsFromMemoryAndFlushesCoalescedWritesOnStop() throws Exception {
+        new VarStoreImpl(storeFile).saveValue("existing", 1);
+        var varStore = new CachingVarStore(storeFile, new ExecutorFactoryImpl(), Duration.ofHours(1));
+        varStore.start();
+
+        varStore.saveValue("key", "value1");
+        varStore.saveValue("key", "value2");
+
+        assertThat(varStore.readValue(String.class, "key"), is(Optional.of("value2")));
+        assertThat(varStore.readValue(Integer.class, "existing"), is(Optional.of(1)));
+        assertThat(new VarStoreImpl(storeFile).readValue(String.class, "key"), is(Optional.empty()));
+
+        varStore.stop();
+
+        assertThat(new VarStoreImpl(storeFile).readValue(String.class, "key"), is(Optional.of("value2")));
+        assertThat(new VarStoreImpl(storeFile).readValue(Integer.class, "existing"), is(Optional.of(1)));
+    }
+
+    @Test
+    void flushesInBackgroundAfterDelay() throws Exception {
+        var varStore = new CachingVarStore(storeFile, new ExecutorFactoryImpl(), Duration.ofMillis(20));
+        varStore.start();
+        try {
+            varStore.saveValue("key", "value");
+
+            var fileVarStore = new VarStoreImpl(storeFile);
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (fileVarStore.readValue(String.class, "key").isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(fileVarStore.readValue(String.class, "key"), is(Optional.of("value")));
+        } finally {
+            varStore.stop();
+        }
+    }
+
+    @Test
+    void bindingDecodesValueOncePerWrite() {
+        var varStore = new CachingVarStore(storeFile, new ExecutorFactoryImpl(), Duration.ofHours(1));
+        VarBinding<StoredValue> binding = varStore.binding(StoredValue.class, "key");
+        assertThat(binding.get(), is(Optional.empty()));
+
+        binding.set(new StoredValue("value", 1));
+        StoredValue value = binding.get().orElseThrow();
+        assertThat(value, is(new StoredValue("value", 1)));
+        assertThat(binding.get().orElseThrow(), sameInstance(value));
+
+        varStore.saveValue("key", new StoredValue("value", 2));
+        assertThat(binding.get(), is(Optional.of(new StoredValue("value", 2))));
+    }
+
+    record StoredValue(String name, int number) {
+    }
+}
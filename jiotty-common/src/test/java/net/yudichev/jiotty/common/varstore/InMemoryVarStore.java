@@ -1,14 +1,18 @@
 package net.yudichev.jiotty.common.varstore;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import net.yudichev.jiotty.common.lang.Closeable;
 
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
 
@@ -20,10 +24,13 @@ public final class InMemoryVarStore implements VarStore {
             .enable(SerializationFeature.INDENT_OUTPUT);
 
     private final Map<String, String> serialisedValuesByKey = new ConcurrentHashMap<>();
+    private final VarStoreSubscriptions subscriptions = new VarStoreSubscriptions();
 
     @Override
-    public void saveValue(String key, Object value) {
-        serialisedValuesByKey.put(key, getAsUnchecked(() -> mapper.writeValueAsString(value)));
+    public synchronized void saveValue(String key, Object value) {
+        String encodedValue = getAsUnchecked(() -> mapper.writeValueAsString(value));
+        serialisedValuesByKey.put(key, encodedValue);
+        subscriptions.notifyIfChanged(key, readNode(encodedValue));
     }
 
     @Override
@@ -31,4 +38,14 @@ public final class InMemoryVarStore implements VarStore {
         return Optional.ofNullable(serialisedValuesByKey.get(key))
                        .map(encodedValue -> getAsUnchecked(() -> mapper.readerFor(type).readValue(encodedValue)));
     }
+
+    @Override
+    public synchronized <T> Closeable subscribe(String key, Class<T> type, Consumer<? super T> consumer, Executor executor) {
+        String encodedValue = serialisedValuesByKey.get(key);
+        return subscriptions.add(key, encodedValue == null ? null : readNode(encodedValue), type, consumer, executor, () -> {});
+    }
+
+    private static JsonNode readNode(String encodedValue) {
+        return getAsUnchecked(() -> mapper.readTree(encodedValue));
+    }
 }
@@ -0,0 +1,120 @@
+package net.yudichev.jiotty.common.varstore;
+
+import net.yudichev.jiotty.common.async.ExecutorFactoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class JournalingVarStoreTest {
+    @TempDir
+    Path tempDir;
+    private Path storeFile;
+    private Path journalFile;
+    private final List<JournalingVarStore> varStores = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        storeFile = tempDir.resolve("data.json");
+        journalFile = tempDir.resolve("data.json.journal");
+    }
+
+    @AfterEach
+    void tearDown() {
+        // stores open the journal on first use even if not started, but only a started store closes it on stop
+        varStores.forEach(varStore -> {
+            varStore.stop();
+            varStore.start();
+            varStore.stop();
+        });
+    }
+
+    @Test
+    void rebuildsValuesFromJournal() {
+        var varStore = newVarStore(1_000_000);
+        varStore.saveValue("key1", "value1");
+        varStore.saveValue("key2", 2);
+        varStore.saveValue("key1", "value1.1");
+
+        var reopenedVarStore = newVarStore(1_000_000);
+        assertThat(reopenedVarStore.readValue(String.class, "key1"), is(Optional.of("value1.1")));
+        assertThat(reopenedVarStore.readValue(Integer.class, "key2"), is(Optional.of(2)));
+        assertThat(reopenedVarStore.readValue(String.class, "key3"), is(Optional.empty()));
+    }
+
+    @Test
+    void truncatesTornRecord() throws Exception {
+        newVarStore(1_000_000).saveValue("key", "value");
+        long validSize = Files.size(journalFile);
+        Files.write(journalFile, new byte[]{0, 0, 0, 100, 1, 2, 3}, APPEND);
+
+        var varStore = newVarStore(1_000_000);
+        assertThat(varStore.readValue(String.class, "key"), is(Optional.of("value")));
+        assertThat(Files.size(journalFile), is(validSize));
+
+        varStore.saveValue("key", "value2");
+        assertThat(newVarStore(1_000_000).readValue(String.class, "key"), is(Optional.of("value2")));
+    }
+
+    @Test
+    void compactsWhenJournalExceedsThreshold() throws Exception {
+        var varStore = newVarStore(1000);
+        for (int i = 0; i < 100; i++) {
+            varStore.saveValue("key" + i % 3, "value" + i);
+        }
+
+        assertThat(Files.size(journalFile), lessThanOrEqualTo(1000L));
+        var reopenedVarStore = newVarStore(1000);
+        assertThat(reopenedVarStore.readValue(String.class, "key0"), is(Optional.of("value99")));
+        assertThat(reopenedVarStore.readValue(String.class, "key1"), is(Optional.of("value97")));
+        assertThat(reopenedVarStore.readValue(String.class, "key2"), is(Optional.of("value98")));
+    }
+
+    @Test
+    void compactsInBackgroundWhenStarted() throws Exception {
+        var varStore = newVarStore(1000);
+        varStore.start();
+        for (int i = 0; i < 300; i++) {
+            varStore.saveValue("key" + i % 3, "value" + i);
+        }
+        // uncompacted, the records take over 12000 bytes; saves made while a compaction runs are carried over, so how far above the
+        // threshold the journal is left depends on timing - keep saving until a compaction catches up
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (Files.size(journalFile) > 1000 && System.nanoTime() < deadline) {
+            varStore.saveValue("key2", "value299");
+            Thread.sleep(10);
+        }
+        varStore.stop();
+
+        assertThat(Files.size(journalFile), lessThanOrEqualTo(1000L));
+        var reopenedVarStore = newVarStore(1000);
+        assertThat(reopenedVarStore.readValue(String.class, "key0"), is(Optional.of("value297")));
+        assertThat(reopenedVarStore.readValue(String.class, "key1"), is(Optional.of("value298")));
+        assertThat(reopenedVarStore.readValue(String.class, "key2"), is(Optional.of("value299")));
+    }
+
+    @Test
+    void importsExistingJsonStore() {
+        new VarStoreImpl(storeFile).saveValue("key", "value");
+
+        assertThat(newVarStore(1_000_000).readValue(String.class, "key"), is(Optional.of("value")));
+    }
+
+    private JournalingVarStore newVarStore(long compactionThresholdBytes) {
+        var varStore = new JournalingVarStore(storeFile, new ExecutorFactoryImpl(), compactionThresholdBytes);
+        varStores.add(varStore);
+        return varStore;
+    }
+}
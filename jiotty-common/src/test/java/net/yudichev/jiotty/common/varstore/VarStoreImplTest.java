@@ -0,0 +1,73 @@
+package net.yudichev.jiotty.common.varstore;
+
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class VarStoreImplTest {
+    @TempDir
+    Path tempDir;
+    private Path storeFile;
+    private VarStoreImpl varStore;
+
+    @BeforeEach
+    void setUp() {
+        storeFile = tempDir.resolve("data.json");
+        varStore = new VarStoreImpl(storeFile);
+    }
+
+    @Test
+    void notifiesSubscriberOncePerInProcessChange() throws Exception {
+        varStore.saveValue("key", "value0");
+        BlockingQueue<String> values = new LinkedBlockingQueue<>();
+        Closeable subscription = varStore.subscribe("key", String.class, values::add, Runnable::run);
+        try {
+            varStore.saveValue("key", "value1");
+            varStore.saveValue("key", "value1");
+            varStore.saveValue("otherKey", "value");
+            varStore.saveValue("key", "value2");
+
+            assertThat(values.poll(5, SECONDS), is("value1"));
+            assertThat(values.poll(5, SECONDS), is("value2"));
+            // the watcher sees our own writes too, but they are not changes
+            assertThat(values.poll(200, MILLISECONDS), is(nullValue()));
+        } finally {
+            subscription.close();
+        }
+    }
+
+    @Test
+    void notifiesSubscriberOfExternalChange() throws Exception {
+        varStore.saveValue("key", "value0");
+        BlockingQueue<String> values = new LinkedBlockingQueue<>();
+        VarBinding<String> binding = varStore.binding(String.class, "key");
+        assertThat(binding.get().orElseThrow(), is("value0"));
+        Closeable subscription = varStore.subscribe("key", String.class, values::add, Runnable::run);
+        try {
+            Path otherFile = tempDir.resolve("other.json");
+            Files.writeString(otherFile, "{\"key\": \"externalValue\"}");
+            Files.move(otherFile, storeFile, REPLACE_EXISTING);
+
+            assertThat(values.poll(5, SECONDS), is("externalValue"));
+            assertThat(binding.get().orElseThrow(), is("externalValue"));
+        } finally {
+            subscription.close();
+        }
+
+        varStore.saveValue("key", "value1");
+        assertThat(values.poll(200, MILLISECONDS), is(nullValue()));
+    }
+}
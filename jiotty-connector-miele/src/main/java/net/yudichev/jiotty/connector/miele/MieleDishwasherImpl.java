@@ -48,7 +48,6 @@ import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.ElementType.PARAMETER;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
-import static java.time.Duration.ZERO;
 import static java.time.Duration.ofMillis;
 import static net.yudichev.jiotty.common.lang.Closeable.closeSafelyIfNotNull;
 import static net.yudichev.jiotty.common.lang.Closeable.idempotent;
@@ -56,6 +55,7 @@ import static net.yudichev.jiotty.common.lang.HumanReadableExceptionMessage.huma
 import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
 import static net.yudichev.jiotty.common.rest.RestClients.call;
 import static net.yudichev.jiotty.common.rest.RestClients.newClient;
+import static net.yudichev.jiotty.common.rest.RestClients.newStreamingClient;
 import static net.yudichev.jiotty.common.rest.RestClients.shutdown;
 import static net.yudichev.jiotty.connector.miele.MieleStreamConnected.STREAM_CONNECTED;
 import static net.yudichev.jiotty.connector.miele.MieleStreamDisconnected.STREAM_DISCONNECTED;
@@ -123,10 +123,7 @@ final class MieleDishwasherImpl extends BaseLifecycleComponent implements MieleD
     @Override
     protected void doStart() {
         executor = executorFactory.createSingleThreadedSchedulingExecutor("MieleDishwasher");
-        eventingClient = newClient(builder -> {
-            streamingClientCustomiser.accept(builder);
-            builder.readTimeout(ZERO).callTimeout(ZERO).writeTimeout(ZERO);
-        });
+        eventingClient = newStreamingClient(streamingClientCustomiser);
         commandClient = newClient(commandClientCustomiser);
         CompletableFuture<Void> firstToken = new CompletableFuture<>();
         tokenSubscription = tokenManager.subscribeToAccessToken(token -> {
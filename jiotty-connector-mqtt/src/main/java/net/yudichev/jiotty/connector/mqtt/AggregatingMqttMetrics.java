@@ -0,0 +1,215 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import com.google.common.collect.ImmutableSortedMap;
+import net.yudichev.jiotty.common.async.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MqttMetrics} kept in memory: inbound messages per subscribed topic filter and outbound messages per topic filter given on
+ * construction, so that it is easy to tell which topics dominate the load, and the current and peak backlogs of received messages, so that
+ * a slow consumer shows while it lags. Outbound topics that match none of the filters are counted per
+ * topic, and beyond the first {@value #MAX_OUTBOUND_TOPICS} together under {@value #OTHER_OUTBOUND_TOPICS}.
+ */
+public final class AggregatingMqttMetrics implements MqttMetrics {
+    static final int MAX_OUTBOUND_TOPICS = 1000;
+    static final String OTHER_OUTBOUND_TOPICS = "<other>";
+
+    private final LongAdder connectionCount = new LongAdder();
+    private final LongAdder connectionLossCount = new LongAdder();
+    private final LatencyHistogram subscriptionRestoreTime = new LatencyHistogram();
+    private final LongAdder receivedMessageCount = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final Map<String, InboundCounters> inboundByTopicFilter = new ConcurrentHashMap<>();
+    // not modified after construction, so safe to read concurrently
+    private final TopicTrie<String> outboundTopicFilters = new TopicTrie<>();
+    private final Map<String, OutboundCounters> outboundByTopicFilter = new ConcurrentHashMap<>();
+    private final BacklogCounters inboundBacklog = new BacklogCounters();
+    private final Map<Integer, BacklogCounters> dispatchBacklogByStripe = new ConcurrentHashMap<>();
+    private volatile int imageCacheEntryCount;
+    private volatile long imageCacheBytes;
+
+    public AggregatingMqttMetrics() {
+        this(List.of());
+    }
+
+    public AggregatingMqttMetrics(Collection<String> outboundTopicFilters) {
+        outboundTopicFilters.forEach(topicFilter -> this.outboundTopicFilters.put(topicFilter, topicFilter));
+    }
+
+    @Override
+    public void connected(boolean reconnect) {
+        connectionCount.increment();
+    }
+
+    @Override
+    public void connectionLost() {
+        connectionLossCount.increment();
+    }
+
+    @Override
+    public void subscriptionsRestored(int topicFilterCount, long durationNanos) {
+        subscriptionRestoreTime.record(durationNanos);
+    }
+
+    @Override
+    public void messageReceived(String topic, int payloadBytes) {
+        receivedMessageCount.increment();
+        receivedBytes.add(payloadBytes);
+    }
+
+    @Override
+    public void messageMatched(String topicFilter, int payloadBytes) {
+        InboundCounters counters = inboundCounters(topicFilter);
+        counters.receivedMessageCount.increment();
+        counters.receivedBytes.add(payloadBytes);
+    }
+
+    @Override
+    public void messageHandled(String topicFilter, long deliveryLatencyNanos, long handlerNanos) {
+        InboundCounters counters = inboundCounters(topicFilter);
+        counters.handledMessageCount.increment();
+        counters.deliveryLatency.record(deliveryLatencyNanos);
+        counters.handlerTime.record(handlerNanos);
+    }
+
+    @Override
+    public void messageConflated(String topicFilter) {
+        inboundCounters(topicFilter).conflatedMessageCount.increment();
+    }
+
+    @Override
+    public void messagePublished(String topic, int payloadBytes) {
+        List<String> matchingFilters = new ArrayList<>(1);
+        outboundTopicFilters.forEachMatchingFilter(topic, (topicFilter, ignored) -> matchingFilters.add(topicFilter));
+        if (matchingFilters.isEmpty()) {
+            OutboundCounters counters = outboundByTopicFilter.get(topic);
+            if (counters == null) {
+                counters = outboundByTopicFilter.computeIfAbsent(outboundByTopicFilter.size() < MAX_OUTBOUND_TOPICS ? topic : OTHER_OUTBOUND_TOPICS,
+                                                                 key -> new OutboundCounters());
+            }
+            counters.record(payloadBytes);
+        } else {
+            matchingFilters.forEach(topicFilter -> outboundByTopicFilter.computeIfAbsent(topicFilter, key -> new OutboundCounters()).record(payloadBytes));
+        }
+    }
+
+    @Override
+    public void imageCacheChanged(int entryCount, long totalBytes) {
+        imageCacheEntryCount = entryCount;
+        imageCacheBytes = totalBytes;
+    }
+
+    @Override
+    public void inboundBacklogChanged(int pendingMessageCount) {
+        inboundBacklog.record(pendingMessageCount);
+    }
+
+    @Override
+    public void dispatchBacklogChanged(int stripe, int pendingTaskCount) {
+        BacklogCounters counters = dispatchBacklogByStripe.get(stripe);
+        if (counters == null) {
+            counters = dispatchBacklogByStripe.computeIfAbsent(stripe, key -> new BacklogCounters());
+        }
+        counters.record(pendingTaskCount);
+    }
+
+    public Snapshot snapshot() {
+        var inbound = ImmutableSortedMap.<String, InboundStats>naturalOrder();
+        inboundByTopicFilter.forEach((topicFilter, counters) -> inbound.put(topicFilter, new InboundStats(counters.receivedMessageCount.sum(),
+                                                                                                          counters.receivedBytes.sum(),
+                                                                                                          counters.handledMessageCount.sum(),
+                                                                                                          counters.conflatedMessageCount.sum(),
+                                                                                                          counters.deliveryLatency.snapshot(),
+                                                                                                          counters.handlerTime.snapshot())));
+        var outbound = ImmutableSortedMap.<String, OutboundStats>naturalOrder();
+        outboundByTopicFilter.forEach((topicFilter, counters) -> outbound.put(topicFilter, new OutboundStats(counters.messageCount.sum(),
+                                                                                                             counters.payloadBytes.sum())));
+        var dispatchBacklog = ImmutableSortedMap.<Integer, BacklogStats>naturalOrder();
+        dispatchBacklogByStripe.forEach((stripe, counters) -> dispatchBacklog.put(stripe, counters.snapshot()));
+        return new Snapshot(connectionCount.sum(),
+                            connectionLossCount.sum(),
+                            subscriptionRestoreTime.snapshot(),
+                            receivedMessageCount.sum(),
+                            receivedBytes.sum(),
+                            inbound.build(),
+                            outbound.build(),
+                            imageCacheEntryCount,
+                            imageCacheBytes,
+                            inboundBacklog.snapshot(),
+                            dispatchBacklog.build());
+    }
+
+    private InboundCounters inboundCounters(String topicFilter) {
+        InboundCounters counters = inboundByTopicFilter.get(topicFilter);
+        return counters == null ? inboundByTopicFilter.computeIfAbsent(topicFilter, key -> new InboundCounters()) : counters;
+    }
+
+    public record Snapshot(long connectionCount,
+                           long connectionLossCount,
+                           LatencyHistogram.Snapshot subscriptionRestoreTime,
+                           long receivedMessageCount,
+                           long receivedBytes,
+                           Map<String, InboundStats> inboundByTopicFilter,
+                           Map<String, OutboundStats> outboundByTopicFilter,
+                           int imageCacheEntryCount,
+                           long imageCacheBytes,
+                           BacklogStats inboundBacklog,
+                           Map<Integer, BacklogStats> dispatchBacklogByStripe) {
+    }
+
+    public record InboundStats(long receivedMessageCount,
+                               long receivedBytes,
+                               long handledMessageCount,
+                               long conflatedMessageCount,
+                               LatencyHistogram.Snapshot deliveryLatency,
+                               LatencyHistogram.Snapshot handlerTime) {
+    }
+
+    public record OutboundStats(long messageCount, long payloadBytes) {
+    }
+
+    public record BacklogStats(int pendingCount, int maxPendingCount) {
+    }
+
+    private static final class InboundCounters {
+        final LongAdder receivedMessageCount = new LongAdder();
+        final LongAdder receivedBytes = new LongAdder();
+        final LongAdder handledMessageCount = new LongAdder();
+        final LongAdder conflatedMessageCount = new LongAdder();
+        final LatencyHistogram deliveryLatency = new LatencyHistogram();
+        final LatencyHistogram handlerTime = new LatencyHistogram();
+    }
+
+    private static final class OutboundCounters {
+        final LongAdder messageCount = new LongAdder();
+        final LongAdder payloadBytes = new LongAdder();
+
+        void record(int bytes) {
+            messageCount.increment();
+            payloadBytes.add(bytes);
+        }
+    }
+
+    private static final class BacklogCounters {
+        final AtomicInteger maxPendingCount = new AtomicInteger();
+        volatile int pendingCount;
+
+        void record(int count) {
+            pendingCount = count;
+            if (count > maxPendingCount.get()) {
+                maxPendingCount.accumulateAndGet(count, Math::max);
+            }
+        }
+
+        BacklogStats snapshot() {
+            return new BacklogStats(pendingCount, maxPendingCount.get());
+        }
+    }
+}
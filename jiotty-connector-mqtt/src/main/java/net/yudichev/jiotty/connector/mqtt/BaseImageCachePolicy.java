@@ -0,0 +1,48 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.lang.PublicImmutablesStyle;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the cache of last received messages that {@link Mqtt#subscribe} delivers to new subscribers. When a limit is exceeded, the least
+ * recently received or delivered messages are evicted. The default policy caches every topic without limits.
+ */
+@Value.Immutable
+@PublicImmutablesStyle
+interface BaseImageCachePolicy {
+    @Value.Default
+    default int maxEntries() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Limit on the sum of payload and topic sizes of the cached messages.
+     */
+    @Value.Default
+    default long maxBytes() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * How long after being received a message stops being delivered to new subscribers.
+     */
+    Optional<Duration> timeToLive();
+
+    /**
+     * If not empty, only messages on topics matching one of these filters are cached.
+     */
+    Set<String> cachedTopicFilters();
+
+    @Value.Check
+    default void check() {
+        checkArgument(maxEntries() > 0, "maxEntries must be positive");
+        checkArgument(maxBytes() > 0, "maxBytes must be positive");
+        timeToLive().ifPresent(ttl -> checkArgument(ttl.isPositive(), "timeToLive must be positive"));
+    }
+}
@@ -0,0 +1,19 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.lang.PublicImmutablesStyle;
+import org.immutables.value.Value;
+
+@Value.Immutable
+@PublicImmutablesStyle
+interface BaseOutboundMessage {
+    @Value.Parameter
+    String topic();
+
+    @Value.Parameter
+    String message();
+
+    @Value.Default
+    default PublishOptions options() {
+        return PublishOptions.builder().build();
+    }
+}
@@ -0,0 +1,25 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.lang.PublicImmutablesStyle;
+import org.immutables.value.Value;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+@Value.Immutable
+@PublicImmutablesStyle
+interface BasePublishOptions {
+    @Value.Default
+    default int qos() {
+        return 1;
+    }
+
+    @Value.Default
+    default boolean retained() {
+        return false;
+    }
+
+    @Value.Check
+    default void check() {
+        checkArgument(qos() >= 0 && qos() <= 2, "qos must be 0, 1 or 2, but was %s", qos());
+    }
+}
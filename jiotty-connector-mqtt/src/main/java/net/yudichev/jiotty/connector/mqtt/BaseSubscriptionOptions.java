@@ -0,0 +1,27 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.lang.PublicImmutablesStyle;
+import org.immutables.value.Value;
+
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+@Value.Immutable
+@PublicImmutablesStyle
+interface BaseSubscriptionOptions {
+    /**
+     * If present, the callback is invoked on this executor instead of the connection's dispatch thread for the topic, and the order of
+     * messages is only preserved if the executor preserves the order of tasks.
+     */
+    Optional<Executor> executor();
+
+    /**
+     * If set, messages that arrive while the callback is still busy with an earlier message of the same topic replace each other, so that
+     * the callback only sees the newest one. Only takes effect if callbacks run asynchronously: on the executor of this subscription, or on
+     * dispatch stripes configured in {@link MqttModule.Builder#withDispatchStripes(int)}.
+     */
+    @Value.Default
+    default boolean conflating() {
+        return false;
+    }
+}
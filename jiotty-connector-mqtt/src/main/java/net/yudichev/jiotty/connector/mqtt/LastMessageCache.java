@@ -0,0 +1,164 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.lang.backoff.NanoClock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Last received message per topic, limited according to an {@link ImageCachePolicy}. Entries are kept in a list ordered by the time they
+ * were last received or delivered, and evicted from its tail. Not thread safe.
+ */
+final class LastMessageCache {
+    private final ImageCachePolicy policy;
+    private final NanoClock nanoClock;
+    private final long timeToLiveNanos;
+    private final TopicTrie<Entry> entriesByTopic = new TopicTrie<>();
+    private final TopicTrie<Boolean> cachedTopicFilters = new TopicTrie<>();
+    // sentinel of a circular list, head.next is the most recently used entry
+    private final Entry head = new Entry(null, null, 0, 0);
+    private long totalBytes;
+    private long evictionCount;
+    private long expirationCount;
+    private long skippedCount;
+
+    LastMessageCache(ImageCachePolicy policy, NanoClock nanoClock) {
+        this.policy = checkNotNull(policy);
+        this.nanoClock = checkNotNull(nanoClock);
+        timeToLiveNanos = policy.timeToLive().map(Duration::toNanos).orElse(Long.MAX_VALUE);
+        policy.cachedTopicFilters().forEach(topicFilter -> cachedTopicFilters.put(topicFilter, Boolean.TRUE));
+        head.previous = head;
+        head.next = head;
+    }
+
+    /**
+     * @return whether the number of entries or their total size changed
+     */
+    boolean put(String topic, byte[] payload) {
+        if (!isCached(topic)) {
+            skippedCount++;
+            return false;
+        }
+        int entryCountBefore = entriesByTopic.size();
+        long totalBytesBefore = totalBytes;
+        long size = (long) topic.length() + payload.length;
+        var entry = new Entry(topic, payload, size, nanoClock.nanoTime());
+        Entry previous = entriesByTopic.put(topic, entry);
+        if (previous != null) {
+            unlink(previous);
+        }
+        link(entry);
+        while (entriesByTopic.size() > policy.maxEntries() || totalBytes > policy.maxBytes()) {
+            remove(head.previous);
+            evictionCount++;
+        }
+        return entriesByTopic.size() != entryCountBefore || totalBytes != totalBytesBefore;
+    }
+
+    /**
+     * @return whether any expired entries were removed
+     */
+    boolean forEachMatching(String topicFilter, BiConsumer<String, byte[]> action) {
+        List<Entry> matches = new ArrayList<>();
+        entriesByTopic.forEachMatchingTopic(topicFilter, (topic, entry) -> matches.add(entry));
+        long now = nanoClock.nanoTime();
+        boolean removed = false;
+        for (Entry entry : matches) {
+            if (isExpired(entry, now)) {
+                remove(entry);
+                expirationCount++;
+                removed = true;
+            } else {
+                unlink(entry);
+                link(entry);
+                action.accept(entry.topic, entry.payload);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return whether any entries were removed
+     */
+    boolean removeExpired() {
+        long now = nanoClock.nanoTime();
+        List<Entry> expired = new ArrayList<>();
+        for (Entry entry = head.next; entry != head; entry = entry.next) {
+            if (isExpired(entry, now)) {
+                expired.add(entry);
+            }
+        }
+        expired.forEach(this::remove);
+        expirationCount += expired.size();
+        return !expired.isEmpty();
+    }
+
+    int entryCount() {
+        return entriesByTopic.size();
+    }
+
+    long totalBytes() {
+        return totalBytes;
+    }
+
+    Stats stats() {
+        return new Stats(entriesByTopic.size(), totalBytes, evictionCount, expirationCount, skippedCount);
+    }
+
+    private boolean isCached(String topic) {
+        if (cachedTopicFilters.size() == 0) {
+            return true;
+        }
+        boolean[] matched = {false};
+        cachedTopicFilters.forEachMatchingFilter(topic, (topicFilter, ignored) -> matched[0] = true);
+        return matched[0];
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.receivedNanos >= timeToLiveNanos;
+    }
+
+    private void remove(Entry entry) {
+        entriesByTopic.remove(entry.topic);
+        unlink(entry);
+    }
+
+    private void link(Entry entry) {
+        entry.previous = head;
+        entry.next = head.next;
+        head.next.previous = entry;
+        head.next = entry;
+        totalBytes += entry.size;
+    }
+
+    private void unlink(Entry entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+        totalBytes -= entry.size;
+    }
+
+    record Stats(int entryCount, long totalBytes, long evictionCount, long expirationCount, long skippedCount) {
+    }
+
+    private static final class Entry {
+        final String topic;
+        final byte[] payload;
+        final long size;
+        final long receivedNanos;
+        Entry previous;
+        Entry next;
+
+        Entry(String topic, byte[] payload, long size, long receivedNanos) {
+            this.topic = topic;
+            this.payload = payload;
+            this.size = size;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+}
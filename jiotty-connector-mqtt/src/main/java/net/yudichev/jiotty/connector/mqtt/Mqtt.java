@@ -2,11 +2,51 @@ package net.yudichev.jiotty.connector.mqtt;
 
 import net.yudichev.jiotty.common.lang.Closeable;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 
 public interface Mqtt {
-    Closeable subscribe(String topicFilter, BiConsumer<String, String> dataCallback);
+    default Closeable subscribe(String topicFilter, BiConsumer<String, String> dataCallback) {
+        return subscribe(topicFilter, dataCallback, SubscriptionOptions.builder().build());
+    }
 
+    Closeable subscribe(String topicFilter, BiConsumer<String, String> dataCallback, SubscriptionOptions options);
+
+    /**
+     * @param dataCallback receives a read-only view of the message payload, which is not copied
+     */
+    default Closeable subscribeBytes(String topicFilter, BiConsumer<String, ByteBuffer> dataCallback) {
+        return subscribeBytes(topicFilter, dataCallback, SubscriptionOptions.builder().build());
+    }
+
+    Closeable subscribeBytes(String topicFilter, BiConsumer<String, ByteBuffer> dataCallback, SubscriptionOptions options);
+
+    /**
+     * Parses message payloads as JSON straight from the received bytes; messages that fail to parse are logged and skipped.
+     */
+    default <T> Closeable subscribe(String topicFilter, Class<T> payloadType, BiConsumer<String, ? super T> dataCallback) {
+        return subscribe(topicFilter, payloadType, dataCallback, SubscriptionOptions.builder().build());
+    }
+
+    <T> Closeable subscribe(String topicFilter, Class<T> payloadType, BiConsumer<String, ? super T> dataCallback, SubscriptionOptions options);
+
+    /**
+     * Publishes with QoS 1, not retained.
+     *
+     * @return future completed when the delivery completes
+     */
     CompletableFuture<Void> publish(String topic, String message);
+
+    /**
+     * @param payload not copied, must not be modified after the call
+     * @return future completed when the delivery completes according to the QoS
+     */
+    CompletableFuture<Void> publish(String topic, byte[] payload, PublishOptions options);
+
+    /**
+     * @return future completed when all messages are delivered, or exceptionally if any of them fails
+     */
+    CompletableFuture<Void> publishAll(List<OutboundMessage> messages);
 }
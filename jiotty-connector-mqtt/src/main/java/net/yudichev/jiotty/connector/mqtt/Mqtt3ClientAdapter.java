@@ -0,0 +1,156 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
+
+/**
+ * MQTT 3.1.1 has no subscription identifiers, so messages arrive untagged.
+ */
+final class Mqtt3ClientAdapter implements MqttClientAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(Mqtt3ClientAdapter.class);
+    // granted QoS value of a refused subscription
+    private static final int SUBSCRIBE_FAILURE_QOS = 0x80;
+    private final IMqttAsyncClient client;
+    private final MqttConnectOptions connectOptions;
+
+    Mqtt3ClientAdapter(IMqttAsyncClient client, MqttConnectOptions connectOptions) {
+        this.client = checkNotNull(client);
+        this.connectOptions = checkNotNull(connectOptions);
+    }
+
+    @Override
+    public String clientId() {
+        return client.getClientId();
+    }
+
+    @Override
+    public String serverUri() {
+        return client.getServerURI();
+    }
+
+    @Override
+    public int maxInFlight() {
+        return connectOptions.getMaxInflight();
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        checkNotNull(callback);
+        client.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                callback.connectComplete(reconnect, serverURI);
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+                callback.connectionLost(cause);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                callback.messageArrived(topic, message.getPayload(), List.of());
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                logger.debug("Message delivered: {}", token.getMessageId());
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> connect() {
+        var future = new CompletableFuture<Void>();
+        asUnchecked(() -> client.connect(connectOptions, null, completing(future)));
+        return future;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return client.isConnected();
+    }
+
+    @Override
+    public void subscribe(String topicFilter, int qos, int subscriptionId) {
+        asUnchecked(() -> client.subscribe(topicFilter, qos));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> resubscribe(List<String> topicFilters, int qos, int subscriptionId) {
+        var future = new CompletableFuture<List<String>>();
+        int[] qosArray = new int[topicFilters.size()];
+        Arrays.fill(qosArray, qos);
+        asUnchecked(() -> client.subscribe(topicFilters.toArray(String[]::new), qosArray, null, new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
+                int[] codes = asyncActionToken.getGrantedQos();
+                List<String> refusedTopicFilters = new ArrayList<>();
+                for (int i = 0; i < topicFilters.size(); i++) {
+                    if (codes == null || i >= codes.length || codes[i] == SUBSCRIBE_FAILURE_QOS) {
+                        refusedTopicFilters.add(topicFilters.get(i));
+                    }
+                }
+                future.complete(refusedTopicFilters);
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                future.completeExceptionally(exception);
+            }
+        }));
+        return future;
+    }
+
+    @Override
+    public void unsubscribe(String topicFilter) {
+        asUnchecked(() -> client.unsubscribe(topicFilter));
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(String topic, byte[] payload, int qos, boolean retained) {
+        var future = new CompletableFuture<Void>();
+        asUnchecked(() -> client.publish(topic, payload, qos, retained, null, completing(future)));
+        return future;
+    }
+
+    @Override
+    public void disconnect(Duration timeout) {
+        asUnchecked(() -> client.disconnect().waitForCompletion(timeout.toMillis()));
+    }
+
+    @Override
+    public void close() {
+        asUnchecked(client::close);
+    }
+
+    private static IMqttActionListener completing(CompletableFuture<Void> future) {
+        return new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
+                future.complete(null);
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                future.completeExceptionally(exception);
+            }
+        };
+    }
+}
@@ -0,0 +1,204 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.eclipse.paho.mqttv5.client.IMqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.asUnchecked;
+
+/**
+ * Topic aliases for outgoing messages are assigned by the Paho client itself as long as the server allows them; aliases for incoming
+ * messages are enabled by {@link MqttConnectionOptions#setTopicAliasMaximum(Integer)}. Subscriptions carry their identifiers unless the
+ * server reported on connect that it does not support them. Restored subscriptions do not make the server resend retained messages for
+ * subscriptions the persistent session kept.
+ */
+final class Mqtt5ClientAdapter implements MqttClientAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(Mqtt5ClientAdapter.class);
+    // the server's receive maximum is only known after connecting; any server allows this many
+    private static final int MAX_IN_FLIGHT = 10;
+    // reason codes from this value on report failures
+    private static final int FIRST_FAILURE_REASON_CODE = 0x80;
+    // send retained messages only if the subscription did not exist in the session
+    private static final int RETAIN_HANDLING_IF_NEW_SUBSCRIPTION = 1;
+    private final IMqttAsyncClient client;
+    private final MqttConnectionOptions connectionOptions;
+    private volatile boolean subscriptionIdentifiersAvailable = true;
+
+    Mqtt5ClientAdapter(IMqttAsyncClient client, MqttConnectionOptions connectionOptions) {
+        this.client = checkNotNull(client);
+        this.connectionOptions = checkNotNull(connectionOptions);
+    }
+
+    @Override
+    public String clientId() {
+        return client.getClientId();
+    }
+
+    @Override
+    public String serverUri() {
+        return client.getServerURI();
+    }
+
+    @Override
+    public int maxInFlight() {
+        return MAX_IN_FLIGHT;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        checkNotNull(callback);
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void disconnected(MqttDisconnectResponse disconnectResponse) {
+                callback.connectionLost(disconnectResponse.getException() == null ?
+                                        new MqttException(disconnectResponse.getReturnCode()) :
+                                        disconnectResponse.getException());
+            }
+
+            @Override
+            public void mqttErrorOccurred(MqttException exception) {
+                logger.warn("{} error", client.getClientId(), exception);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                List<Integer> subscriptionIds = message.getProperties() == null ? null : message.getProperties().getSubscriptionIdentifiers();
+                callback.messageArrived(topic, message.getPayload(), subscriptionIds == null ? List.of() : subscriptionIds);
+            }
+
+            @Override
+            public void deliveryComplete(IMqttToken token) {
+                logger.debug("Message delivered: {}", token.getMessageId());
+            }
+
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                callback.connectComplete(reconnect, serverURI);
+            }
+
+            @Override
+            public void authPacketArrived(int reasonCode, MqttProperties properties) {
+                logger.debug("Ignoring AUTH packet, reason code {}", reasonCode);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> connect() {
+        var future = new CompletableFuture<Void>();
+        asUnchecked(() -> client.connect(connectionOptions, null, new MqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
+                MqttProperties serverProperties = asyncActionToken == null ? null : asyncActionToken.getResponseProperties();
+                if (serverProperties != null) {
+                    subscriptionIdentifiersAvailable = serverProperties.isSubscriptionIdentifiersAvailable();
+                }
+                future.complete(null);
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                future.completeExceptionally(exception);
+            }
+        }));
+        return future;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return client.isConnected();
+    }
+
+    @Override
+    public void subscribe(String topicFilter, int qos, int subscriptionId) {
+        asUnchecked(() -> client.subscribe(new MqttSubscription[]{new MqttSubscription(topicFilter, qos)}, null, null, subscriptionProperties(subscriptionId)));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> resubscribe(List<String> topicFilters, int qos, int subscriptionId) {
+        var future = new CompletableFuture<List<String>>();
+        MqttSubscription[] subscriptions = topicFilters.stream().map(topicFilter -> {
+            var subscription = new MqttSubscription(topicFilter, qos);
+            subscription.setRetainHandling(RETAIN_HANDLING_IF_NEW_SUBSCRIPTION);
+            return subscription;
+        }).toArray(MqttSubscription[]::new);
+        asUnchecked(() -> client.subscribe(subscriptions, null, new MqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
+                int[] codes = asyncActionToken.getReasonCodes();
+                List<String> refusedTopicFilters = new ArrayList<>();
+                for (int i = 0; i < topicFilters.size(); i++) {
+                    if (codes == null || i >= codes.length || codes[i] >= FIRST_FAILURE_REASON_CODE) {
+                        refusedTopicFilters.add(topicFilters.get(i));
+                    }
+                }
+                future.complete(refusedTopicFilters);
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                future.completeExceptionally(exception);
+            }
+        }, subscriptionProperties(subscriptionId)));
+        return future;
+    }
+
+    @Override
+    public void unsubscribe(String topicFilter) {
+        asUnchecked(() -> client.unsubscribe(topicFilter));
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(String topic, byte[] payload, int qos, boolean retained) {
+        var future = new CompletableFuture<Void>();
+        asUnchecked(() -> client.publish(topic, payload, qos, retained, null, completing(future)));
+        return future;
+    }
+
+    @Override
+    public void disconnect(Duration timeout) {
+        asUnchecked(() -> client.disconnect().waitForCompletion(timeout.toMillis()));
+    }
+
+    @Override
+    public void close() {
+        asUnchecked(client::close);
+    }
+
+    private MqttProperties subscriptionProperties(int subscriptionId) {
+        var properties = new MqttProperties();
+        if (subscriptionIdentifiersAvailable) {
+            properties.setSubscriptionIdentifier(subscriptionId);
+        }
+        return properties;
+    }
+
+    private static MqttActionListener completing(CompletableFuture<Void> future) {
+        return new MqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
+                future.complete(null);
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                future.completeExceptionally(exception);
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
+
+final class Mqtt5ClientProvider implements Provider<MqttClientAdapter> {
+    private static final Logger logger = LoggerFactory.getLogger(Mqtt5ClientProvider.class);
+    private final String serverUri;
+    private final String clientId;
+    private final MqttConnectionOptions connectionOptions;
+
+    @Inject
+    Mqtt5ClientProvider(@MqttClientProvider.ServerUri String serverUri,
+                        @MqttClientProvider.ClientId String clientId,
+                        @MqttImpl.Dependency MqttConnectionOptions connectionOptions) {
+        this.serverUri = checkNotNull(serverUri);
+        this.clientId = checkNotNull(clientId);
+        this.connectionOptions = checkNotNull(connectionOptions);
+    }
+
+    @Override
+    public MqttClientAdapter get() {
+        logger.info("Creating MQTT 5 client for {} as {}", serverUri, clientId);
+        return new Mqtt5ClientAdapter(getAsUnchecked(() -> new MqttAsyncClient(serverUri, clientId, new MemoryPersistence())), connectionOptions);
+    }
+}
@@ -0,0 +1,63 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.lang.Closeable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The part of a Paho client {@link MqttImpl} uses, so that it can run over either MQTT 3.1.1 or MQTT 5. Checked client exceptions are
+ * rethrown unchecked.
+ */
+interface MqttClientAdapter extends Closeable {
+    String clientId();
+
+    String serverUri();
+
+    /**
+     * @return maximum number of outgoing messages the client allows to be unacknowledged at a time
+     */
+    int maxInFlight();
+
+    void setCallback(Callback callback);
+
+    CompletableFuture<Void> connect();
+
+    boolean isConnected();
+
+    /**
+     * @param subscriptionId tags the messages delivered for this subscription, where the protocol supports it; see
+     *                       {@link Callback#messageArrived}
+     */
+    void subscribe(String topicFilter, int qos, int subscriptionId);
+
+    /**
+     * Restores subscriptions after a reconnect with a single request, so they all share the subscription identifier. Where the protocol
+     * supports it, the server only sends retained messages for the filters it no longer had subscribed in the session.
+     *
+     * @return future of the filters the server refused
+     */
+    CompletableFuture<List<String>> resubscribe(List<String> topicFilters, int qos, int subscriptionId);
+
+    void unsubscribe(String topicFilter);
+
+    /**
+     * @return future that completes when the delivery completes according to the QoS
+     * @throws RuntimeException if the client rejects the message straight away
+     */
+    CompletableFuture<Void> publish(String topic, byte[] payload, int qos, boolean retained);
+
+    void disconnect(Duration timeout);
+
+    interface Callback {
+        void connectComplete(boolean reconnect, String serverUri);
+
+        void connectionLost(Throwable cause);
+
+        /**
+         * @param subscriptionIds identifiers of the subscriptions the message is delivered for; empty if the server does not tag messages
+         */
+        void messageArrived(String topic, byte[] payload, List<Integer> subscriptionIds);
+    }
+}
@@ -1,8 +1,8 @@
 package net.yudichev.jiotty.connector.mqtt;
 
 import com.google.inject.BindingAnnotation;
-import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,22 +19,25 @@ import static java.lang.annotation.ElementType.PARAMETER;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
 
-final class MqttClientProvider implements Provider<IMqttAsyncClient> {
+final class MqttClientProvider implements Provider<MqttClientAdapter> {
     private static final Logger logger = LoggerFactory.getLogger(MqttClientProvider.class);
     private final String serverUri;
     private final String clientId;
+    private final MqttConnectOptions connectOptions;
 
     @Inject
     MqttClientProvider(@ServerUri String serverUri,
-                       @ClientId String clientId) {
+                       @ClientId String clientId,
+                       @MqttImpl.Dependency MqttConnectOptions connectOptions) {
         this.serverUri = checkNotNull(serverUri);
         this.clientId = checkNotNull(clientId);
+        this.connectOptions = checkNotNull(connectOptions);
     }
 
     @Override
-    public IMqttAsyncClient get() {
+    public MqttClientAdapter get() {
         logger.info("Creating MQTT client for {} as {}", serverUri, clientId);
-        return getAsUnchecked(() -> new MqttAsyncClient(serverUri, clientId, new MemoryPersistence()));
+        return new Mqtt3ClientAdapter(getAsUnchecked(() -> new MqttAsyncClient(serverUri, clientId, new MemoryPersistence())), connectOptions);
     }
 
     @BindingAnnotation
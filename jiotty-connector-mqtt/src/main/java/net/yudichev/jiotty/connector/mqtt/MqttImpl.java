@@ -9,44 +9,44 @@ import net.yudichev.jiotty.common.async.Scheduler;
 import net.yudichev.jiotty.common.async.SchedulingExecutor;
 import net.yudichev.jiotty.common.inject.BaseLifecycleComponent;
 import net.yudichev.jiotty.common.lang.Closeable;
+import net.yudichev.jiotty.common.lang.ConflatingInbox;
+import net.yudichev.jiotty.common.lang.Json;
 import net.yudichev.jiotty.common.lang.backoff.BackOff;
 import net.yudichev.jiotty.common.lang.backoff.ExponentialBackOff;
 import net.yudichev.jiotty.common.lang.backoff.NanoClock;
 import net.yudichev.jiotty.common.lang.backoff.SynchronizedBackOff;
 import net.yudichev.jiotty.common.lang.throttling.ThresholdThrottlingConsumerFactory;
-import org.eclipse.paho.client.mqttv3.IMqttActionListener;
-import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
-import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
-import org.eclipse.paho.client.mqttv3.IMqttToken;
-import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
-import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.MqttTopic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.ElementType.PARAMETER;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.concurrent.CompletableFuture.supplyAsync;
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.partitioningBy;
 import static net.yudichev.jiotty.common.lang.Closeable.closeIfNotNull;
 import static net.yudichev.jiotty.common.lang.Closeable.closeSafelyIfNotNull;
 import static net.yudichev.jiotty.common.lang.Closeable.idempotent;
@@ -58,36 +58,63 @@ import static net.yudichev.jiotty.common.lang.Runnables.guarded;
 
 class MqttImpl extends BaseLifecycleComponent implements Mqtt {
     private static final Logger logger = LoggerFactory.getLogger(MqttImpl.class);
+    private static final PublishOptions DEFAULT_PUBLISH_OPTIONS = PublishOptions.builder().build();
+    private static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
+    private static final int PLAIN_SUBSCRIPTION_ID = 1;
+    private static final int SHARED_SUBSCRIPTION_ID = 2;
     private final ThresholdThrottlingConsumerFactory<Throwable> throttledLoggerFactory;
-    private final MqttConnectOptions mqttConnectOptions;
-    private final Map<String, MqttMessage> lastReceivedMessageByTopic = new HashMap<>();
-    private final Map<String, Set<BiConsumer<String, MqttMessage>>> subscriptionsByFilter = new HashMap<>();
-    private final IMqttAsyncClient client;
+    private final ImageCachePolicy imageCachePolicy;
+    // keyed by the filter messages are matched against, which for shared subscriptions is not the one subscribed with, so a shared and
+    // a plain subscription to the same filter are kept apart and told apart by the subscription identifiers of the messages
+    private final TopicTrie<Set<Subscription>> plainSubscriptionsByFilter = new TopicTrie<>();
+    private final TopicTrie<Set<Subscription>> sharedSubscriptionsByFilter = new TopicTrie<>();
+    private final Map<String, Integer> subscriptionCountsByServerFilter = new LinkedHashMap<>();
+    private final MqttClientAdapter client;
     private final ExecutorFactory executorFactory;
     private final String name;
     private final double connectBackoffRandmisationFactor;
     private final NanoClock nanoClock;
+    private final int dispatchStripeCount;
+    private final MqttMetrics metrics;
+    // messages handed to the handler executor and not yet dispatched
+    private final AtomicInteger inboundBacklog = new AtomicInteger();
     private SchedulingExecutor executor;
+    private StripedDispatcher dispatcher;
+    private LastMessageCache lastReceivedMessages;
+    private PublishPipeline publishPipeline;
 
     @Inject
-    MqttImpl(IMqttAsyncClient client,
+    MqttImpl(MqttClientAdapter client,
              ExecutorFactory executorFactory,
              @Dependency ThresholdThrottlingConsumerFactory<Throwable> throttledLoggerFactory,
-             @Dependency MqttConnectOptions mqttConnectOptions) {
-        this(client, executorFactory, throttledLoggerFactory, mqttConnectOptions, System::nanoTime, ExponentialBackOff.DEFAULT_RANDOMIZATION_FACTOR);
+             @Dependency ImageCachePolicy imageCachePolicy,
+             @DispatchStripeCount int dispatchStripeCount,
+             @Dependency MqttMetrics metrics) {
+        this(client,
+             executorFactory,
+             throttledLoggerFactory,
+             imageCachePolicy,
+             dispatchStripeCount,
+             metrics,
+             System::nanoTime,
+             ExponentialBackOff.DEFAULT_RANDOMIZATION_FACTOR);
     }
 
-    MqttImpl(IMqttAsyncClient client,
+    MqttImpl(MqttClientAdapter client,
              ExecutorFactory executorFactory,
              ThresholdThrottlingConsumerFactory<Throwable> throttledLoggerFactory,
-             MqttConnectOptions mqttConnectOptions,
+             ImageCachePolicy imageCachePolicy,
+             int dispatchStripeCount,
+             MqttMetrics metrics,
              NanoClock nanoClock,
              double connectBackoffRandmisationFactor) {
         this.executorFactory = checkNotNull(executorFactory);
         this.throttledLoggerFactory = checkNotNull(throttledLoggerFactory);
-        this.mqttConnectOptions = checkNotNull(mqttConnectOptions);
-        this.client = client;
-        name = super.name() + " " + client.getClientId() + " " + client.getServerURI();
+        this.imageCachePolicy = checkNotNull(imageCachePolicy);
+        this.dispatchStripeCount = dispatchStripeCount;
+        this.metrics = checkNotNull(metrics);
+        this.client = checkNotNull(client);
+        name = super.name() + " " + client.clientId() + " " + client.serverUri();
         this.nanoClock = checkNotNull(nanoClock);
         this.connectBackoffRandmisationFactor = connectBackoffRandmisationFactor;
     }
@@ -99,7 +126,15 @@ class MqttImpl extends BaseLifecycleComponent implements Mqtt {
 
     @Override
     protected void doStart() {
-        executor = executorFactory.createSingleThreadedSchedulingExecutor("Handler-" + client.getServerURI());
+        executor = executorFactory.createSingleThreadedSchedulingExecutor("Handler-" + client.serverUri());
+        dispatcher = new StripedDispatcher(executorFactory, "Dispatcher-" + client.serverUri(), dispatchStripeCount, metrics);
+        lastReceivedMessages = new LastMessageCache(imageCachePolicy, nanoClock);
+        publishPipeline = new PublishPipeline(client, client.maxInFlight());
+        imageCachePolicy.timeToLive().ifPresent(timeToLive -> executor.scheduleAtFixedRate(timeToLive, () -> {
+            if (lastReceivedMessages.removeExpired()) {
+                reportImageCache();
+            }
+        }));
         BackOff backoff = new SynchronizedBackOff(new ExponentialBackOff.Builder()
                                                           .setNanoClock(nanoClock)
                                                           .setInitialIntervalMillis(1000)
@@ -111,35 +146,29 @@ class MqttImpl extends BaseLifecycleComponent implements Mqtt {
         executor.execute(() -> {
             client.setCallback(new ResubscribeOnReconnectCallback());
             CompletableFuture<Void> connectFuture = asyncOperationRetry
-                    .withBackOffAndRetry("MQTT Connect to " + client.getServerURI(),
+                    .withBackOffAndRetry("MQTT Connect to " + client.serverUri(),
                                          () -> {
-                                             logger.debug("MQTT Connecting to {}", client.getServerURI());
-                                             var future = new CompletableFuture<Void>();
+                                             logger.debug("MQTT Connecting to {}", client.serverUri());
                                              try {
-                                                 client.connect(mqttConnectOptions, null, new IMqttActionListener() {
-                                                     @Override
-                                                     public void onSuccess(IMqttToken asyncActionToken) {
-                                                         future.complete(null);
-                                                     }
-
-                                                     @Override
-                                                     public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-                                                         future.completeExceptionally(exception);
-                                                     }
-                                                 });
-                                             } catch (MqttException e) {
-                                                 future.completeExceptionally(e);
+                                                 return client.connect();
+                                             } catch (RuntimeException e) {
+                                                 return CompletableFuture.failedFuture(e);
                                              }
-                                             return future;
                                          },
                                          (delayMillis, runnable) -> scheduleReconnect(executor, delayMillis, runnable));
             try {
-                waitForConnectFutureAndThen(connectFuture, () -> logger.info("Connected to {}", client.getServerURI()));
+                waitForConnectFutureAndThen(connectFuture, () -> {
+                    logger.info("Connected to {}", client.serverUri());
+                    publishPipeline.open();
+                });
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                logger.warn("Failed to connect to {}", client.getServerURI(), e);
+                logger.warn("Failed to connect to {}", client.serverUri(), e);
+                publishPipeline.open();
             } catch (ExecutionException e) {
-                logger.warn("Failed to connect to {}", client.getServerURI(), e);
+                logger.warn("Failed to connect to {}", client.serverUri(), e);
+                // let queued messages fail rather than wait forever
+                publishPipeline.open();
             }
         });
     }
@@ -161,53 +190,121 @@ class MqttImpl extends BaseLifecycleComponent implements Mqtt {
     }
 
     @Override
-    public Closeable subscribe(String topicFilter, BiConsumer<String, String> dataCallback) {
+    public Closeable subscribe(String topicFilter, BiConsumer<String, String> dataCallback, SubscriptionOptions options) {
+        checkNotNull(dataCallback);
+        return addSubscription(topicFilter, (topic, payload) -> dataCallback.accept(topic, new String(payload, UTF_8)), options);
+    }
+
+    @Override
+    public Closeable subscribeBytes(String topicFilter, BiConsumer<String, ByteBuffer> dataCallback, SubscriptionOptions options) {
+        checkNotNull(dataCallback);
+        return addSubscription(topicFilter,
+                               (topic, payload) -> dataCallback.accept(topic, ByteBuffer.wrap(payload).asReadOnlyBuffer()),
+                               options);
+    }
+
+    @Override
+    public <T> Closeable subscribe(String topicFilter, Class<T> payloadType, BiConsumer<String, ? super T> dataCallback, SubscriptionOptions options) {
+        checkNotNull(payloadType);
+        checkNotNull(dataCallback);
+        return addSubscription(topicFilter, (topic, payload) -> dataCallback.accept(topic, Json.parse(payload, payloadType)), options);
+    }
+
+    private Closeable addSubscription(String topicFilter, BiConsumer<String, byte[]> dataCallback, SubscriptionOptions options) {
         checkStarted();
-        BiConsumer<String, MqttMessage> callback = exceptionLogging(new MessageToStringDataCallback(dataCallback));
+        String matchedTopicFilter = matchedTopicFilter(topicFilter);
+        TopicTrie<Set<Subscription>> subscriptionsByFilter = isShared(topicFilter) ? sharedSubscriptionsByFilter : plainSubscriptionsByFilter;
+        var subscription = new Subscription(topicFilter, exceptionLogging(dataCallback), options.executor().orElse(null), options.conflating());
         executor.execute(() -> {
-            deliverImage(topicFilter, callback);
-            subscriptionsByFilter.computeIfAbsent(topicFilter, filter -> {
-                doSubscribe(filter,
-                            (topic, message) -> {
-                                Set<BiConsumer<String, MqttMessage>> subscriptions = subscriptionsByFilter.get(filter);
-                                if (!subscriptions.isEmpty()) {
-                                    runForAll(subscriptions, consumer -> consumer.accept(topic, message));
-                                }
-                            });
-                return new HashSet<>();
-            }).add(callback);
+            deliverImage(matchedTopicFilter, subscription);
+            if (!subscriptionCountsByServerFilter.containsKey(topicFilter)) {
+                doSubscribe(topicFilter);
+            }
+            subscriptionCountsByServerFilter.merge(topicFilter, 1, Integer::sum);
+            subscriptionsByFilter.computeIfAbsent(matchedTopicFilter, filter -> new HashSet<>()).add(subscription);
         });
 
-        return idempotent(() -> executor.execute(guarded(logger, "unsubscribe", () ->
-                subscriptionsByFilter.computeIfPresent(topicFilter, (filter, callbacks) -> {
-                    callbacks.remove(callback);
-                    if (callbacks.isEmpty()) {
-                        if (client.isConnected()) {
-                            asUnchecked(() -> client.unsubscribe(topicFilter));
-                        }
-                        return null;
-                    }
-                    return callbacks;
-                }))));
+        return idempotent(() -> executor.execute(guarded(logger, "unsubscribe", () -> {
+            Set<Subscription> subscriptions = subscriptionsByFilter.get(matchedTopicFilter);
+            if (subscriptions != null && subscriptions.remove(subscription)) {
+                if (subscriptions.isEmpty()) {
+                    subscriptionsByFilter.remove(matchedTopicFilter);
+                }
+                Integer remainingCount = subscriptionCountsByServerFilter.computeIfPresent(topicFilter, (filter, count) -> count == 1 ? null : count - 1);
+                if (remainingCount == null && client.isConnected()) {
+                    client.unsubscribe(topicFilter);
+                }
+            }
+        })));
+    }
+
+    /**
+     * The server delivers messages of a shared subscription ({@code $share/<group>/<filter>}) with their original topics, so they are
+     * matched against the filter without the share prefix.
+     */
+    private static String matchedTopicFilter(String topicFilter) {
+        if (!isShared(topicFilter)) {
+            return topicFilter;
+        }
+        int groupEnd = topicFilter.indexOf('/', SHARED_SUBSCRIPTION_PREFIX.length());
+        checkArgument(groupEnd > SHARED_SUBSCRIPTION_PREFIX.length(), "Invalid shared subscription topic filter: %s", topicFilter);
+        return topicFilter.substring(groupEnd + 1);
+    }
+
+    private static boolean isShared(String topicFilter) {
+        return topicFilter.startsWith(SHARED_SUBSCRIPTION_PREFIX);
+    }
+
+    private static int subscriptionId(boolean shared) {
+        return shared ? SHARED_SUBSCRIPTION_ID : PLAIN_SUBSCRIPTION_ID;
     }
 
     @Override
     public CompletableFuture<Void> publish(String topic, String message) {
         checkStarted();
-        return supplyAsync(() -> {
-            logger.debug("OUT topic: {}, msg: {}", topic, message);
-            asUnchecked(() -> client.publish(topic, message.getBytes(UTF_8), 1, false));
-            return null;
-        }, executor);
+        logger.debug("OUT topic: {}, msg: {}", topic, message);
+        byte[] payload = message.getBytes(UTF_8);
+        return reportingPublished(topic, payload, publishPipeline.publish(topic, payload, DEFAULT_PUBLISH_OPTIONS));
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(String topic, byte[] payload, PublishOptions options) {
+        checkStarted();
+        logger.debug("OUT topic: {}, {} bytes, {}", topic, payload.length, options);
+        return reportingPublished(topic, payload, publishPipeline.publish(topic, payload, options));
+    }
+
+    @Override
+    public CompletableFuture<Void> publishAll(List<OutboundMessage> messages) {
+        checkStarted();
+        logger.debug("OUT {} messages", messages.size());
+        List<PublishPipeline.PendingPublish> pendingPublishes = messages.stream()
+                                                                       .map(message -> new PublishPipeline.PendingPublish(message.topic(),
+                                                                                                                          message.message().getBytes(UTF_8),
+                                                                                                                          message.options()))
+                                                                       .toList();
+        pendingPublishes.forEach(pendingPublish -> reportingPublished(pendingPublish.topic(), pendingPublish.payload(), pendingPublish.future()));
+        return publishPipeline.publishAll(pendingPublishes);
+    }
+
+    private CompletableFuture<Void> reportingPublished(String topic, byte[] payload, CompletableFuture<Void> publishFuture) {
+        publishFuture.thenRun(() -> metrics.messagePublished(topic, payload.length));
+        return publishFuture;
     }
 
     @Override
     protected void doStop() {
-        closeIfNotNull(executor);
+        closeIfNotNull(executor, dispatcher);
+        if (publishPipeline != null) {
+            publishPipeline.close();
+        }
+        if (lastReceivedMessages != null) {
+            logger.info("Last message cache: {}, dispatcher: {}", lastReceivedMessages.stats(), dispatcher.stats());
+        }
         // disconnect must not be scheduled to the executor that is potentially blocked on connect; this method also seems to be thread safe
         try {
-            client.disconnect().waitForCompletion(SECONDS.toMillis(10));
-        } catch (MqttException e) {
+            client.disconnect(Duration.ofSeconds(10));
+        } catch (RuntimeException e) {
             // if the client is already disconnected, disconnect() blows, and we do not care much about it
             logger.info("Failed to disconnect client: {}", humanReadableMessage(e));
         } finally {
@@ -225,20 +322,74 @@ class MqttImpl extends BaseLifecycleComponent implements Mqtt {
         };
     }
 
-    private void doSubscribe(String topicFilter, BiConsumer<String, MqttMessage> callback) {
-        asUnchecked(() -> client.subscribe(topicFilter, 2, (topic, message) -> {
-            logger.debug("IN topic: {}, msg: {}", topic, message);
-            guarded(logger, "Notify client on MQTT message", () -> callback.accept(topic, message)).run();
-        }));
+    /**
+     * No per-filter listener is registered with the client, so that all messages arrive at {@link ResubscribeOnReconnectCallback#messageArrived}
+     * and are matched against all filters in one pass over {@link #plainSubscriptionsByFilter} or {@link #sharedSubscriptionsByFilter}.
+     */
+    private void doSubscribe(String topicFilter) {
+        client.subscribe(topicFilter, 2, subscriptionId(isShared(topicFilter)));
     }
 
-    private void deliverImage(String topicFilter, BiConsumer<String, MqttMessage> callback) {
-        lastReceivedMessageByTopic.forEach((topic, message) -> {
-            if (MqttTopic.isMatched(topicFilter, topic)) {
-                logger.debug("Delivering last known message {} -> {}", topic, message);
-                guarded(logger, "deliver last known message", () -> callback.accept(topic, message)).run();
+    /**
+     * Shared and plain filters go in separate requests, as a request has one subscription identifier for all its filters.
+     */
+    private CompletableFuture<List<String>> doResubscribe(List<String> topicFilters) {
+        CompletableFuture<List<String>> refusedFiltersFuture = CompletableFuture.completedFuture(List.of());
+        for (Map.Entry<Boolean, List<String>> entry : topicFilters.stream().collect(partitioningBy(MqttImpl::isShared)).entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                refusedFiltersFuture = refusedFiltersFuture.thenCombine(client.resubscribe(entry.getValue(), 2, subscriptionId(entry.getKey())),
+                                                                        (refused1, refused2) -> Stream.concat(refused1.stream(), refused2.stream()).toList());
             }
+        }
+        return refusedFiltersFuture;
+    }
+
+    private void deliverImage(String topicFilter, Subscription subscription) {
+        long readyNanos = nanoClock.nanoTime();
+        boolean expiredRemoved = lastReceivedMessages.forEachMatching(topicFilter, (topic, payload) -> {
+            logger.debug("Delivering last known message on {}", topic);
+            subscription.deliver(topic, payload, readyNanos);
         });
+        if (expiredRemoved) {
+            reportImageCache();
+        }
+    }
+
+    private void reportImageCache() {
+        metrics.imageCacheChanged(lastReceivedMessages.entryCount(), lastReceivedMessages.totalBytes());
+    }
+
+    /**
+     * Runs on the handler executor; plain callbacks run on the dispatcher stripe of the topic, all in one task, others on their own.
+     * A message without subscription identifiers (always the case over MQTT 3.1.1) cannot be attributed, so it goes to both plain and shared
+     * subscriptions.
+     */
+    private void dispatch(String topic, byte[] payload, List<Integer> subscriptionIds, long arrivedNanos) {
+        if (lastReceivedMessages.put(topic, payload)) {
+            reportImageCache();
+        }
+        List<Subscription> stripedSubscriptions = new ArrayList<>();
+        Set<String> matchedTopicFilters = new HashSet<>();
+        BiConsumer<String, Set<Subscription>> subscriptionsDispatcher = (topicFilter, subscriptions) -> subscriptions.forEach(subscription -> {
+            if (matchedTopicFilters.add(subscription.topicFilter)) {
+                metrics.messageMatched(subscription.topicFilter, payload.length);
+            }
+            if (subscription.executor == null && !subscription.conflating) {
+                stripedSubscriptions.add(subscription);
+            } else {
+                subscription.deliver(topic, payload, arrivedNanos);
+            }
+        });
+        if (subscriptionIds.isEmpty() || subscriptionIds.contains(PLAIN_SUBSCRIPTION_ID)) {
+            plainSubscriptionsByFilter.forEachMatchingFilter(topic, subscriptionsDispatcher);
+        }
+        if (subscriptionIds.isEmpty() || subscriptionIds.contains(SHARED_SUBSCRIPTION_ID)) {
+            sharedSubscriptionsByFilter.forEachMatchingFilter(topic, subscriptionsDispatcher);
+        }
+        if (!stripedSubscriptions.isEmpty()) {
+            dispatcher.execute(topic, guarded(logger, "Notify client on MQTT message",
+                                              () -> runForAll(stripedSubscriptions, subscription -> subscription.handle(topic, payload, arrivedNanos))));
+        }
     }
 
     @BindingAnnotation
@@ -247,33 +398,69 @@ class MqttImpl extends BaseLifecycleComponent implements Mqtt {
     @interface Dependency {
     }
 
-    private static class MessageToStringDataCallback implements BiConsumer<String, MqttMessage> {
-        private final BiConsumer<String, String> delegate;
+    @BindingAnnotation
+    @Target({FIELD, PARAMETER, METHOD})
+    @Retention(RUNTIME)
+    @interface DispatchStripeCount {
+    }
 
-        MessageToStringDataCallback(BiConsumer<String, String> delegate) {
-            this.delegate = checkNotNull(delegate);
+    private final class Subscription {
+        private final String topicFilter;
+        private final BiConsumer<String, byte[]> callback;
+        private final Executor executor;
+        private final boolean conflating;
+        // accessed on the handler executor only
+        private final Map<String, ConflatingInbox<byte[]>> inboxesByTopic;
+
+        Subscription(String topicFilter, BiConsumer<String, byte[]> callback, Executor executor, boolean conflating) {
+            this.topicFilter = checkNotNull(topicFilter);
+            this.callback = checkNotNull(callback);
+            this.executor = executor;
+            this.conflating = conflating;
+            inboxesByTopic = conflating ? new HashMap<>() : Map.of();
         }
 
-        @Override
-        public void accept(String topic, MqttMessage message) {
-            delegate.accept(topic, new String(message.getPayload(), UTF_8));
+        void deliver(String topic, byte[] payload, long readyNanos) {
+            Executor topicExecutor = executor == null ? dispatcher.executorFor(topic) : executor;
+            if (conflating) {
+                ConflatingInbox<byte[]> inbox = inboxesByTopic.computeIfAbsent(topic, ignored -> new ConflatingInbox<>());
+                if (inbox.add(payload)) {
+                    topicExecutor.execute(guarded(logger, "Notify client on MQTT message",
+                                                  () -> inbox.get().ifPresent(latestPayload -> handle(topic, latestPayload, readyNanos))));
+                } else {
+                    metrics.messageConflated(topicFilter);
+                }
+            } else {
+                topicExecutor.execute(guarded(logger, "Notify client on MQTT message", () -> handle(topic, payload, readyNanos)));
+            }
+        }
+
+        void handle(String topic, byte[] payload, long readyNanos) {
+            long startNanos = nanoClock.nanoTime();
+            callback.accept(topic, payload);
+            metrics.messageHandled(topicFilter, startNanos - readyNanos, nanoClock.nanoTime() - startNanos);
         }
     }
 
 
-    private class ResubscribeOnReconnectCallback implements MqttCallbackExtended {
+    private class ResubscribeOnReconnectCallback implements MqttClientAdapter.Callback {
         private final Consumer<Throwable> throttledErrorLogger = throttledLoggerFactory.create(5, Duration.ofMinutes(1), e ->
-                logger.error("{} lost connection to {} too often (suppressing this error for 1 minute)", client.getClientId(), client.getServerURI(), e));
+                logger.error("{} lost connection to {} too often (suppressing this error for 1 minute)", client.clientId(), client.serverUri(), e));
         private final BackOff backOff = new ExponentialBackOff.Builder()
                 .setInitialIntervalMillis(10)
                 .setMaxIntervalMillis(10_000)
                 .setMultiplier(2)
                 .build();
         private Closeable subRetryTimerHandle = noop();
+        // incremented on each connection loss, so that outcomes of restoring over a previous connection are ignored
+        private long connectionEpoch;
+        private long restoreStartNanos;
+        private int restoringFilterCount;
 
         @Override
         public void connectComplete(boolean reconnect, String serverURI) {
-            logger.info("{} completed connection to {}, reconnected={}", client.getClientId(), serverURI, reconnect);
+            logger.info("{} completed connection to {}, reconnected={}", client.clientId(), serverURI, reconnect);
+            metrics.connected(reconnect);
             if (reconnect) {
                 restoreSubscriptions();
             }
@@ -281,39 +468,72 @@ class MqttImpl extends BaseLifecycleComponent implements Mqtt {
 
         private void restoreSubscriptions() {
             executor.execute(() -> {
-                logger.info("Restoring subscriptions: {}", subscriptionsByFilter);
-                try {
-                    subscriptionsByFilter.forEach((topicFilter, callbacks) ->
-                                                          callbacks.forEach(callback -> doSubscribe(topicFilter, callback)));
+                restoreStartNanos = nanoClock.nanoTime();
+                restoringFilterCount = subscriptionCountsByServerFilter.size();
+                restoreSubscriptions(List.copyOf(subscriptionCountsByServerFilter.keySet()));
+            });
+        }
+
+        /**
+         * Sends all plain and all shared filters in one request each, so that restoring takes a single round trip, and then retries only the
+         * ones that failed.
+         */
+        private void restoreSubscriptions(List<String> topicFilters) {
+            List<String> stillSubscribedFilters = topicFilters.stream().filter(subscriptionCountsByServerFilter::containsKey).toList();
+            if (stillSubscribedFilters.isEmpty()) {
+                backOff.reset();
+                return;
+            }
+            logger.info("Restoring {} subscriptions", stillSubscribedFilters.size());
+            long epoch = connectionEpoch;
+            CompletableFuture<List<String>> refusedFiltersFuture;
+            try {
+                refusedFiltersFuture = doResubscribe(stillSubscribedFilters);
+            } catch (RuntimeException e) {
+                refusedFiltersFuture = CompletableFuture.failedFuture(e);
+            }
+            refusedFiltersFuture.whenComplete((refusedFilters, exception) -> executor.execute(() -> {
+                if (epoch != connectionEpoch) {
+                    return;
+                }
+                if (exception != null) {
+                    scheduleRestore(stillSubscribedFilters, exception);
+                } else if (refusedFilters.isEmpty()) {
                     backOff.reset();
-                } catch (RuntimeException e) {
-                    long nextRetryInMs = backOff.nextBackOffMillis();
-                    logger.info("Re-subscription failed, will re-try in {}ms", nextRetryInMs, e);
-                    subRetryTimerHandle = executor.schedule(Duration.ofMillis(nextRetryInMs), this::restoreSubscriptions);
+                    metrics.subscriptionsRestored(restoringFilterCount, nanoClock.nanoTime() - restoreStartNanos);
+                } else {
+                    scheduleRestore(refusedFilters, new IllegalStateException("Server refused subscriptions to " + refusedFilters));
                 }
-            });
+            }));
+        }
+
+        private void scheduleRestore(List<String> topicFilters, Throwable cause) {
+            long nextRetryInMs = backOff.nextBackOffMillis();
+            logger.info("Re-subscription of {} filters failed, will re-try in {}ms", topicFilters.size(), nextRetryInMs, cause);
+            subRetryTimerHandle = executor.schedule(Duration.ofMillis(nextRetryInMs), () -> restoreSubscriptions(topicFilters));
         }
 
         @Override
         public void connectionLost(Throwable cause) {
-            logger.info("{} lost connection to {}", client.getClientId(), client.getServerURI(), cause);
+            logger.info("{} lost connection to {}", client.clientId(), client.serverUri(), cause);
+            metrics.connectionLost();
             executor.execute(() -> {
+                connectionEpoch++;
                 subRetryTimerHandle.close();
                 throttledErrorLogger.accept(cause);
             });
         }
 
         @Override
-        public void messageArrived(String topic, MqttMessage message) {
+        public void messageArrived(String topic, byte[] payload, List<Integer> subscriptionIds) {
+            long arrivedNanos = nanoClock.nanoTime();
+            metrics.messageReceived(topic, payload.length);
+            metrics.inboundBacklogChanged(inboundBacklog.incrementAndGet());
             executor.execute(() -> {
-                logger.debug("messageArrived: {}->{}", topic, message);
-                lastReceivedMessageByTopic.put(topic, message);
+                metrics.inboundBacklogChanged(inboundBacklog.decrementAndGet());
+                logger.debug("IN topic: {}, {} bytes", topic, payload.length);
+                dispatch(topic, payload, subscriptionIds, arrivedNanos);
             });
         }
-
-        @Override
-        public void deliveryComplete(IMqttDeliveryToken token) {
-            logger.debug("Message delivered: {}", token.getMessageId());
-        }
     }
 }
@@ -0,0 +1,72 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+/**
+ * Receives measurements of one {@link Mqtt} connection, e.g. to export them to a monitoring system; {@link AggregatingMqttMetrics} keeps
+ * them in memory. Methods are called on the connection's hot paths from several threads, so implementations must be thread safe and cheap.
+ * Durations are in nanoseconds.
+ */
+public interface MqttMetrics {
+    MqttMetrics NOOP = new MqttMetrics() {};
+
+    default void connected(boolean reconnect) {
+    }
+
+    default void connectionLost() {
+    }
+
+    /**
+     * @param durationNanos from the reconnect until all subscriptions were accepted by the server, including retries
+     */
+    default void subscriptionsRestored(int topicFilterCount, long durationNanos) {
+    }
+
+    default void messageReceived(String topic, int payloadBytes) {
+    }
+
+    /**
+     * A received message matched subscriptions with the given filter; reported once per message for each matching filter.
+     *
+     * @param topicFilter the filter of the subscriptions, as subscribed with
+     */
+    default void messageMatched(String topicFilter, int payloadBytes) {
+    }
+
+    /**
+     * A subscription callback handled a message.
+     *
+     * @param topicFilter          the filter of the subscription, as subscribed with
+     * @param deliveryLatencyNanos from the message arriving (or the subscription being made, for last known messages) until the callback
+     *                             started
+     * @param handlerNanos         time spent in the callback
+     */
+    default void messageHandled(String topicFilter, long deliveryLatencyNanos, long handlerNanos) {
+    }
+
+    /**
+     * A conflating subscription skipped a message in favour of a newer one.
+     */
+    default void messageConflated(String topicFilter) {
+    }
+
+    /**
+     * A published message was delivered according to its QoS; messages that fail to publish are not reported.
+     */
+    default void messagePublished(String topic, int payloadBytes) {
+    }
+
+    default void imageCacheChanged(int entryCount, long totalBytes) {
+    }
+
+    /**
+     * Received messages waiting to be matched against the subscriptions, reported whenever the count changes; grows when messages arrive
+     * faster than the connection's handler executor dispatches them.
+     */
+    default void inboundBacklogChanged(int pendingMessageCount) {
+    }
+
+    /**
+     * Callbacks waiting on a dispatcher stripe, reported whenever the count changes; grows when a callback of a topic on the stripe is slow.
+     */
+    default void dispatchBacklogChanged(int stripe, int pendingTaskCount) {
+    }
+}
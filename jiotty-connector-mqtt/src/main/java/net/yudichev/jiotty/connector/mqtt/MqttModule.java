@@ -7,29 +7,45 @@ import net.yudichev.jiotty.common.inject.HasWithAnnotation;
 import net.yudichev.jiotty.common.inject.SpecifiedAnnotation;
 import net.yudichev.jiotty.common.lang.TypedBuilder;
 import net.yudichev.jiotty.common.lang.throttling.ThresholdThrottlingConsumerModule;
-import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
 
 import javax.inject.Singleton;
+import java.time.Duration;
 import java.util.function.Consumer;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static net.yudichev.jiotty.common.inject.SpecifiedAnnotation.forAnnotation;
 import static net.yudichev.jiotty.common.inject.SpecifiedAnnotation.forNoAnnotation;
 
 public final class MqttModule extends BaseLifecycleComponentModule implements ExposedKeyModule<Mqtt> {
+    private static final Duration DEFAULT_MQTT5_SESSION_EXPIRY = Duration.ofMinutes(5);
+    private static final int DEFAULT_MQTT5_TOPIC_ALIAS_MAXIMUM = 64;
     private final String serverUri;
     private final String clientId;
     private final Consumer<MqttConnectOptions> connectionOptionsCustomiser;
+    private final Consumer<MqttConnectionOptions> mqtt5ConnectionOptionsCustomiser;
+    private final ImageCachePolicy imageCachePolicy;
+    private final int dispatchStripeCount;
+    private final MqttMetrics metrics;
     private final Key<Mqtt> exposedKey;
 
     private MqttModule(String serverUri,
                        String clientId,
                        Consumer<MqttConnectOptions> connectionOptionsCustomiser,
+                       Consumer<MqttConnectionOptions> mqtt5ConnectionOptionsCustomiser,
+                       ImageCachePolicy imageCachePolicy,
+                       int dispatchStripeCount,
+                       MqttMetrics metrics,
                        SpecifiedAnnotation specifiedAnnotation) {
         this.serverUri = checkNotNull(serverUri);
         this.clientId = checkNotNull(clientId);
         this.connectionOptionsCustomiser = checkNotNull(connectionOptionsCustomiser);
+        this.mqtt5ConnectionOptionsCustomiser = mqtt5ConnectionOptionsCustomiser;
+        this.imageCachePolicy = checkNotNull(imageCachePolicy);
+        this.dispatchStripeCount = dispatchStripeCount;
+        this.metrics = checkNotNull(metrics);
         exposedKey = specifiedAnnotation.specify(ExposedKeyModule.super.getExposedKey().getTypeLiteral());
     }
 
@@ -46,11 +62,23 @@ public final class MqttModule extends BaseLifecycleComponentModule implements Ex
     protected void configure() {
         bindConstant().annotatedWith(MqttClientProvider.ServerUri.class).to(serverUri);
         bindConstant().annotatedWith(MqttClientProvider.ClientId.class).to(clientId);
-        bind(IMqttAsyncClient.class).toProvider(MqttClientProvider.class).in(Singleton.class);
-
-        MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
-        connectionOptionsCustomiser.accept(mqttConnectOptions);
-        bind(MqttConnectOptions.class).annotatedWith(MqttImpl.Dependency.class).toInstance(mqttConnectOptions);
+        if (mqtt5ConnectionOptionsCustomiser == null) {
+            bind(MqttClientAdapter.class).toProvider(MqttClientProvider.class).in(Singleton.class);
+            MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
+            connectionOptionsCustomiser.accept(mqttConnectOptions);
+            bind(MqttConnectOptions.class).annotatedWith(MqttImpl.Dependency.class).toInstance(mqttConnectOptions);
+        } else {
+            bind(MqttClientAdapter.class).toProvider(Mqtt5ClientProvider.class).in(Singleton.class);
+            MqttConnectionOptions mqttConnectionOptions = new MqttConnectionOptions();
+            mqttConnectionOptions.setCleanStart(false);
+            mqttConnectionOptions.setSessionExpiryInterval(DEFAULT_MQTT5_SESSION_EXPIRY.toSeconds());
+            mqttConnectionOptions.setTopicAliasMaximum(DEFAULT_MQTT5_TOPIC_ALIAS_MAXIMUM);
+            mqtt5ConnectionOptionsCustomiser.accept(mqttConnectionOptions);
+            bind(MqttConnectionOptions.class).annotatedWith(MqttImpl.Dependency.class).toInstance(mqttConnectionOptions);
+        }
+        bind(ImageCachePolicy.class).annotatedWith(MqttImpl.Dependency.class).toInstance(imageCachePolicy);
+        bindConstant().annotatedWith(MqttImpl.DispatchStripeCount.class).to(dispatchStripeCount);
+        bind(MqttMetrics.class).annotatedWith(MqttImpl.Dependency.class).toInstance(metrics);
 
         installLifecycleComponentModule(ThresholdThrottlingConsumerModule.builder()
                 .setValueType(Throwable.class)
@@ -65,6 +93,10 @@ public final class MqttModule extends BaseLifecycleComponentModule implements Ex
         private String serverUri;
         private String clientId;
         private Consumer<MqttConnectOptions> connectionOptionsCustomiser = ignored -> {};
+        private Consumer<MqttConnectionOptions> mqtt5ConnectionOptionsCustomiser;
+        private ImageCachePolicy imageCachePolicy = ImageCachePolicy.builder().build();
+        private int dispatchStripeCount;
+        private MqttMetrics metrics = MqttMetrics.NOOP;
         private SpecifiedAnnotation specifiedAnnotation = forNoAnnotation();
 
         public Builder setServerUri(String serverUri) {
@@ -82,6 +114,36 @@ public final class MqttModule extends BaseLifecycleComponentModule implements Ex
             return this;
         }
 
+        /**
+         * Connects using MQTT 5, which allows shared subscriptions ({@code $share/<group>/<filter>}). By default, the session is kept by the
+         * server for 5 minutes after the connection is lost and the server may use up to 64 topic aliases for incoming messages; the
+         * customiser can override these. {@link #withConnectionOptionsCustomised(Consumer)} does not apply in this mode.
+         */
+        public Builder withMqtt5(Consumer<MqttConnectionOptions> connectionOptionsCustomiser) {
+            mqtt5ConnectionOptionsCustomiser = checkNotNull(connectionOptionsCustomiser);
+            return this;
+        }
+
+        public Builder withImageCachePolicy(ImageCachePolicy imageCachePolicy) {
+            this.imageCachePolicy = checkNotNull(imageCachePolicy);
+            return this;
+        }
+
+        /**
+         * Dispatches received messages to this many threads, chosen by topic, instead of the single connection handler thread. Messages of
+         * one topic are still handled in order.
+         */
+        public Builder withDispatchStripes(int dispatchStripeCount) {
+            checkArgument(dispatchStripeCount >= 0, "dispatchStripeCount must not be negative");
+            this.dispatchStripeCount = dispatchStripeCount;
+            return this;
+        }
+
+        public Builder withMetrics(MqttMetrics metrics) {
+            this.metrics = checkNotNull(metrics);
+            return this;
+        }
+
         @Override
         public Builder withAnnotation(SpecifiedAnnotation specifiedAnnotation) {
             this.specifiedAnnotation = checkNotNull(specifiedAnnotation);
@@ -90,7 +152,14 @@ public final class MqttModule extends BaseLifecycleComponentModule implements Ex
 
         @Override
         public ExposedKeyModule<Mqtt> build() {
-            return new MqttModule(serverUri, clientId, connectionOptionsCustomiser, specifiedAnnotation);
+            return new MqttModule(serverUri,
+                                  clientId,
+                                  connectionOptionsCustomiser,
+                                  mqtt5ConnectionOptionsCustomiser,
+                                  imageCachePolicy,
+                                  dispatchStripeCount,
+                                  metrics,
+                                  specifiedAnnotation);
         }
     }
 }
@@ -0,0 +1,152 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes straight from the calling thread, keeping at most {@code maxInFlight} messages unacknowledged and queueing the rest, so that
+ * the client never rejects a publish for exceeding its own in-flight limit. Publish futures complete when the delivery completes according
+ * to the QoS. Messages published before {@link #open()} are queued until then.
+ */
+final class PublishPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(PublishPipeline.class);
+
+    private final MqttClientAdapter client;
+    private final int maxInFlight;
+    private final Object lock = new Object();
+    // guarded by lock
+    private final Deque<PendingPublish> queue = new ArrayDeque<>();
+    private int inFlightCount;
+    // only one thread hands messages to the client at a time, so that they reach it in the queue order
+    private boolean draining;
+    private boolean open;
+    private boolean closed;
+
+    PublishPipeline(MqttClientAdapter client, int maxInFlight) {
+        this.client = checkNotNull(client);
+        checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        this.maxInFlight = maxInFlight;
+    }
+
+    CompletableFuture<Void> publish(String topic, byte[] payload, PublishOptions options) {
+        var pendingPublish = new PendingPublish(topic, payload, options);
+        enqueue(List.of(pendingPublish));
+        return pendingPublish.future;
+    }
+
+    CompletableFuture<Void> publishAll(List<PendingPublish> pendingPublishes) {
+        enqueue(pendingPublishes);
+        return CompletableFuture.allOf(pendingPublishes.stream().map(pendingPublish -> pendingPublish.future).toArray(CompletableFuture[]::new));
+    }
+
+    void open() {
+        synchronized (lock) {
+            open = true;
+        }
+        sendQueued();
+    }
+
+    void close() {
+        List<PendingPublish> abandoned;
+        synchronized (lock) {
+            closed = true;
+            abandoned = new ArrayList<>(queue);
+            queue.clear();
+        }
+        abandoned.forEach(pendingPublish -> pendingPublish.future.completeExceptionally(new IllegalStateException("MQTT client is stopped")));
+    }
+
+    private void enqueue(List<PendingPublish> pendingPublishes) {
+        synchronized (lock) {
+            if (closed) {
+                pendingPublishes.forEach(pendingPublish -> pendingPublish.future.completeExceptionally(new IllegalStateException("MQTT client is stopped")));
+                return;
+            }
+            queue.addAll(pendingPublishes);
+        }
+        sendQueued();
+    }
+
+    private void sendQueued() {
+        synchronized (lock) {
+            if (draining) {
+                // the draining thread will send what this one queued or made room for
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            PendingPublish next;
+            synchronized (lock) {
+                next = open && inFlightCount < maxInFlight ? queue.poll() : null;
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+                inFlightCount++;
+            }
+            send(next);
+        }
+    }
+
+    private void send(PendingPublish pendingPublish) {
+        try {
+            client.publish(pendingPublish.topic, pendingPublish.payload, pendingPublish.options.qos(), pendingPublish.options.retained())
+                  .whenComplete((ignored, exception) -> {
+                      onCompleted();
+                      if (exception == null) {
+                          pendingPublish.future.complete(null);
+                      } else {
+                          pendingPublish.future.completeExceptionally(exception);
+                      }
+                  });
+        } catch (RuntimeException e) {
+            logger.debug("Failed to publish to {}", pendingPublish.topic, e);
+            synchronized (lock) {
+                inFlightCount--;
+            }
+            pendingPublish.future.completeExceptionally(e);
+        }
+    }
+
+    private void onCompleted() {
+        synchronized (lock) {
+            inFlightCount--;
+        }
+        sendQueued();
+    }
+
+    static final class PendingPublish {
+        private final String topic;
+        private final byte[] payload;
+        private final PublishOptions options;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingPublish(String topic, byte[] payload, PublishOptions options) {
+            this.topic = checkNotNull(topic);
+            this.payload = checkNotNull(payload);
+            this.options = checkNotNull(options);
+        }
+
+        String topic() {
+            return topic;
+        }
+
+        byte[] payload() {
+            return payload;
+        }
+
+        CompletableFuture<Void> future() {
+            return future;
+        }
+    }
+}
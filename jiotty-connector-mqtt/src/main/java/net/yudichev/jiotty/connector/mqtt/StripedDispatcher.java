@@ -0,0 +1,72 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.async.ExecutorFactory;
+import net.yudichev.jiotty.common.async.SchedulingExecutor;
+import net.yudichev.jiotty.common.lang.Closeable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.yudichev.jiotty.common.lang.Closeable.closeIfNotNull;
+
+/**
+ * Runs message callbacks on one of several single-threaded executors chosen by topic, so that messages of a topic are handled in order,
+ * while a slow callback only delays the topics sharing its stripe. With no stripes, callbacks run inline on the calling thread.
+ */
+final class StripedDispatcher implements Closeable {
+    private final MqttMetrics metrics;
+    private final SchedulingExecutor[] stripes;
+    private final AtomicIntegerArray pendingTaskCounts;
+    private final AtomicLong dispatchedTaskCount = new AtomicLong();
+    private final AtomicLong maxPendingTaskCount = new AtomicLong();
+
+    StripedDispatcher(ExecutorFactory executorFactory, String threadNameBase, int stripeCount, MqttMetrics metrics) {
+        checkNotNull(executorFactory);
+        this.metrics = checkNotNull(metrics);
+        checkArgument(stripeCount >= 0, "stripeCount must not be negative");
+        stripes = new SchedulingExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = executorFactory.createSingleThreadedSchedulingExecutor(threadNameBase + "-" + i);
+        }
+        pendingTaskCounts = new AtomicIntegerArray(stripeCount);
+    }
+
+    void execute(String topic, Runnable task) {
+        dispatchedTaskCount.incrementAndGet();
+        if (stripes.length == 0) {
+            task.run();
+            return;
+        }
+        int stripe = Math.floorMod(topic.hashCode(), stripes.length);
+        int pendingTaskCount = pendingTaskCounts.incrementAndGet(stripe);
+        maxPendingTaskCount.accumulateAndGet(pendingTaskCount, Math::max);
+        metrics.dispatchBacklogChanged(stripe, pendingTaskCount);
+        stripes[stripe].execute(() -> {
+            metrics.dispatchBacklogChanged(stripe, pendingTaskCounts.decrementAndGet(stripe));
+            task.run();
+        });
+    }
+
+    Executor executorFor(String topic) {
+        return task -> execute(topic, task);
+    }
+
+    Stats stats() {
+        int pendingTaskCount = 0;
+        for (int i = 0; i < pendingTaskCounts.length(); i++) {
+            pendingTaskCount += pendingTaskCounts.get(i);
+        }
+        return new Stats(stripes.length, dispatchedTaskCount.get(), pendingTaskCount, maxPendingTaskCount.get());
+    }
+
+    @Override
+    public void close() {
+        closeIfNotNull(stripes);
+    }
+
+    record Stats(int stripeCount, long dispatchedTaskCount, int pendingTaskCount, long maxPendingTaskCount) {
+    }
+}
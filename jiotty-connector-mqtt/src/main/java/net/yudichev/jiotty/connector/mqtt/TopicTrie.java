@@ -0,0 +1,223 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Maps MQTT topic names or topic filters to values, organised by topic level, so that finding the entries that match a given topic or
+ * filter costs in proportion to the topic depth and the number of matches rather than to the total number of entries.
+ * <p>
+ * Follows the MQTT matching rules: {@code +} matches exactly one (possibly empty) level, a trailing {@code #} matches the parent level
+ * and any number of levels below it, and wildcards at the first level do not match topics starting with {@code $}. Not thread safe.
+ */
+final class TopicTrie<V> {
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /**
+     * @return the value for the exact key, or {@code null}
+     */
+    V get(String key) {
+        Node<V> node = root;
+        for (String level : levels(key)) {
+            node = node.child(level);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.value;
+    }
+
+    V put(String key, V value) {
+        checkNotNull(value);
+        Node<V> node = nodeFor(key);
+        V previous = node.value;
+        node.key = key;
+        node.value = value;
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    V computeIfAbsent(String key, Function<? super String, ? extends V> valueFactory) {
+        Node<V> node = nodeFor(key);
+        if (node.value == null) {
+            V value = checkNotNull(valueFactory.apply(key));
+            node.key = key;
+            node.value = value;
+            size++;
+        }
+        return node.value;
+    }
+
+    /**
+     * @return the removed value, or {@code null} if there was none
+     */
+    V remove(String key) {
+        String[] levels = levels(key);
+        V removed = remove(root, levels, 0);
+        if (removed != null) {
+            size--;
+        }
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(BiConsumer<? super String, ? super V> action) {
+        forEachInSubtree(root, action);
+    }
+
+    /**
+     * Treats the keys as topic filters and visits the entries whose filter matches the given topic name.
+     */
+    void forEachMatchingFilter(String topic, BiConsumer<? super String, ? super V> action) {
+        matchFilters(root, levels(topic), 0, action);
+    }
+
+    /**
+     * Treats the keys as topic names and visits the entries whose topic is matched by the given topic filter.
+     */
+    void forEachMatchingTopic(String topicFilter, BiConsumer<? super String, ? super V> action) {
+        matchTopics(root, levels(topicFilter), 0, action);
+    }
+
+    private Node<V> nodeFor(String key) {
+        Node<V> node = root;
+        for (String level : levels(key)) {
+            node = node.childOrCreate(level);
+        }
+        return node;
+    }
+
+    private static <V> V remove(Node<V> node, String[] levels, int levelIndex) {
+        if (levelIndex == levels.length) {
+            V removed = node.value;
+            node.key = null;
+            node.value = null;
+            return removed;
+        }
+        Node<V> child = node.child(levels[levelIndex]);
+        if (child == null) {
+            return null;
+        }
+        V removed = remove(child, levels, levelIndex + 1);
+        if (child.isEmpty()) {
+            node.children.remove(levels[levelIndex]);
+        }
+        return removed;
+    }
+
+    private static <V> void matchFilters(Node<V> node, String[] topicLevels, int levelIndex, BiConsumer<? super String, ? super V> action) {
+        if (levelIndex == topicLevels.length) {
+            node.accept(action);
+            // "a/#" also matches "a"
+            Node<V> multiLevel = node.child(MULTI_LEVEL_WILDCARD);
+            if (multiLevel != null) {
+                multiLevel.accept(action);
+            }
+            return;
+        }
+        Node<V> exact = node.child(topicLevels[levelIndex]);
+        if (exact != null) {
+            matchFilters(exact, topicLevels, levelIndex + 1, action);
+        }
+        if (wildcardsApply(topicLevels[levelIndex], levelIndex)) {
+            Node<V> singleLevel = node.child(SINGLE_LEVEL_WILDCARD);
+            if (singleLevel != null) {
+                matchFilters(singleLevel, topicLevels, levelIndex + 1, action);
+            }
+            Node<V> multiLevel = node.child(MULTI_LEVEL_WILDCARD);
+            if (multiLevel != null) {
+                multiLevel.accept(action);
+            }
+        }
+    }
+
+    private static <V> void matchTopics(Node<V> node, String[] filterLevels, int levelIndex, BiConsumer<? super String, ? super V> action) {
+        if (levelIndex == filterLevels.length) {
+            node.accept(action);
+            return;
+        }
+        String filterLevel = filterLevels[levelIndex];
+        switch (filterLevel) {
+            case MULTI_LEVEL_WILDCARD -> {
+                if (levelIndex > 0) {
+                    node.accept(action);
+                }
+                node.forEachChild((level, child) -> {
+                    if (wildcardsApply(level, levelIndex)) {
+                        forEachInSubtree(child, action);
+                    }
+                });
+            }
+            case SINGLE_LEVEL_WILDCARD -> node.forEachChild((level, child) -> {
+                if (wildcardsApply(level, levelIndex)) {
+                    matchTopics(child, filterLevels, levelIndex + 1, action);
+                }
+            });
+            default -> {
+                Node<V> exact = node.child(filterLevel);
+                if (exact != null) {
+                    matchTopics(exact, filterLevels, levelIndex + 1, action);
+                }
+            }
+        }
+    }
+
+    private static <V> void forEachInSubtree(Node<V> node, BiConsumer<? super String, ? super V> action) {
+        node.accept(action);
+        node.forEachChild((level, child) -> forEachInSubtree(child, action));
+    }
+
+    private static boolean wildcardsApply(String topicLevel, int levelIndex) {
+        return levelIndex > 0 || !topicLevel.startsWith("$");
+    }
+
+    private static String[] levels(String key) {
+        return key.split("/", -1);
+    }
+
+    private static final class Node<V> {
+        private Map<String, Node<V>> children;
+        private String key;
+        private V value;
+
+        Node<V> child(String level) {
+            return children == null ? null : children.get(level);
+        }
+
+        Node<V> childOrCreate(String level) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            return children.computeIfAbsent(level, ignored -> new Node<>());
+        }
+
+        void forEachChild(BiConsumer<String, Node<V>> action) {
+            if (children != null) {
+                children.forEach(action);
+            }
+        }
+
+        void accept(BiConsumer<? super String, ? super V> action) {
+            if (value != null) {
+                action.accept(key, value);
+            }
+        }
+
+        boolean isEmpty() {
+            return value == null && (children == null || children.isEmpty());
+        }
+    }
+}
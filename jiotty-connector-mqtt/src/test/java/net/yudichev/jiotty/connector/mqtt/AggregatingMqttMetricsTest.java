@@ -0,0 +1,25 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class AggregatingMqttMetricsTest {
+    @Test
+    void countsOutboundMessagesPerMatchingTopicFilter() {
+        var metrics = new AggregatingMqttMetrics(List.of("state/+", "state/#"));
+
+        metrics.messagePublished("state/a", 2);
+        metrics.messagePublished("state/b", 3);
+        metrics.messagePublished("state/b/c", 4);
+        metrics.messagePublished("other", 5);
+
+        assertThat(metrics.snapshot().outboundByTopicFilter(), is(Map.of("state/+", new AggregatingMqttMetrics.OutboundStats(2, 5),
+                                                                          "state/#", new AggregatingMqttMetrics.OutboundStats(3, 9),
+                                                                          "other", new AggregatingMqttMetrics.OutboundStats(1, 5))));
+    }
+}
@@ -0,0 +1,347 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.async.ExecutorFactoryImpl;
+import net.yudichev.jiotty.common.lang.Closeable;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static net.yudichev.jiotty.common.lang.MoreThrowables.getAsUnchecked;
+
+/**
+ * Minimal in-process MQTT 3.1.1 broker for tests and benchmarks: wildcard subscriptions, retained messages and QoS 0 to 2, but no
+ * redelivery, persistent sessions, will messages, authentication or MQTT 5. Listens on a random loopback port.
+ */
+public final class EmbeddedMqttBroker implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedMqttBroker.class);
+    private static final int CONNECT = 1;
+    private static final int CONNACK = 2;
+    private static final int PUBLISH = 3;
+    private static final int PUBACK = 4;
+    private static final int PUBREC = 5;
+    private static final int PUBREL = 6;
+    private static final int PUBCOMP = 7;
+    private static final int SUBSCRIBE = 8;
+    private static final int SUBACK = 9;
+    private static final int UNSUBSCRIBE = 10;
+    private static final int UNSUBACK = 11;
+    private static final int PINGREQ = 12;
+    private static final int PINGRESP = 13;
+    private static final int DISCONNECT = 14;
+    private static final int PROTOCOL_LEVEL_3_1_1 = 4;
+    private static final int CONNACK_UNACCEPTABLE_PROTOCOL_VERSION = 1;
+
+    private final ServerSocket serverSocket;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Object lock = new Object();
+    // guarded by lock
+    private final TopicTrie<Map<Connection, Integer>> grantedQosByFilter = new TopicTrie<>();
+    // guarded by lock
+    private final TopicTrie<byte[]> retainedPayloadsByTopic = new TopicTrie<>();
+    private final LongAdder receivedMessageCount = new LongAdder();
+    private final LongAdder deliveredMessageCount = new LongAdder();
+    private volatile boolean closed;
+
+    private EmbeddedMqttBroker() {
+        serverSocket = getAsUnchecked(() -> new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+        startDaemon("EmbeddedMqttBroker-" + serverSocket.getLocalPort(), this::acceptConnections);
+    }
+
+    public static EmbeddedMqttBroker start() {
+        return new EmbeddedMqttBroker();
+    }
+
+    public String serverUri() {
+        return "tcp://" + serverSocket.getInetAddress().getHostAddress() + ':' + serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return {@link MqttImpl} connected to this broker over MQTT 3.1.1, to be started and stopped by the caller
+     */
+    MqttImpl newClient(String clientId, int dispatchStripeCount) {
+        var client = getAsUnchecked(() -> new MqttAsyncClient(serverUri(), clientId, new MemoryPersistence()));
+        return new MqttImpl(new Mqtt3ClientAdapter(client, new MqttConnectOptions()),
+                            new ExecutorFactoryImpl(),
+                            (threshold, throttlingDuration, delegate) -> delegate,
+                            ImageCachePolicy.builder().build(),
+                            dispatchStripeCount,
+                            MqttMetrics.NOOP);
+    }
+
+    public long receivedMessageCount() {
+        return receivedMessageCount.sum();
+    }
+
+    public long deliveredMessageCount() {
+        return deliveredMessageCount.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close server socket", e);
+        }
+        connections.forEach(Connection::close);
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                var connection = new Connection(serverSocket.accept());
+                connections.add(connection);
+                startDaemon("EmbeddedMqttBroker-connection-" + connection.socket.getPort(), connection::run);
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Failed to accept connection", e);
+                }
+            }
+        }
+    }
+
+    private void route(String topic, byte[] payload, int qos, boolean retain) {
+        receivedMessageCount.increment();
+        Map<Connection, Integer> deliveryQosByConnection = new HashMap<>();
+        synchronized (lock) {
+            if (retain) {
+                if (payload.length == 0) {
+                    retainedPayloadsByTopic.remove(topic);
+                } else {
+                    retainedPayloadsByTopic.put(topic, payload);
+                }
+            }
+            // a connection with several matching filters gets the message once, with the highest QoS granted
+            grantedQosByFilter.forEachMatchingFilter(topic, (topicFilter, grantedQosByConnection) ->
+                    grantedQosByConnection.forEach((connection, grantedQos) -> deliveryQosByConnection.merge(connection, Math.min(qos, grantedQos), Math::max)));
+        }
+        deliveryQosByConnection.forEach((connection, deliveryQos) -> connection.sendPublish(topic, payload, deliveryQos, false));
+    }
+
+    private static void startDaemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        // guarded by itself
+        private final OutputStream out;
+        private int lastPacketId;
+        private String clientId = "?";
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        void run() {
+            try {
+                boolean connected = true;
+                while (connected) {
+                    int fixedHeader = in.read();
+                    if (fixedHeader < 0) {
+                        break;
+                    }
+                    byte[] body = new byte[readRemainingLength()];
+                    in.readFully(body);
+                    connected = handle(fixedHeader >> 4, fixedHeader & 0x0F, ByteBuffer.wrap(body));
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    logger.debug("Connection of {} failed", clientId, e);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            connections.remove(this);
+            synchronized (lock) {
+                List<String> emptyFilters = new ArrayList<>();
+                grantedQosByFilter.forEach((topicFilter, grantedQosByConnection) -> {
+                    if (grantedQosByConnection.remove(this) != null && grantedQosByConnection.isEmpty()) {
+                        emptyFilters.add(topicFilter);
+                    }
+                });
+                emptyFilters.forEach(grantedQosByFilter::remove);
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close connection of {}", clientId, e);
+            }
+        }
+
+        private boolean handle(int packetType, int flags, ByteBuffer body) {
+            switch (packetType) {
+                case CONNECT -> {
+                    readString(body);
+                    int protocolLevel = body.get() & 0xFF;
+                    body.get();
+                    body.getShort();
+                    clientId = readString(body);
+                    if (protocolLevel != PROTOCOL_LEVEL_3_1_1) {
+                        send(CONNACK << 4, new byte[]{0, CONNACK_UNACCEPTABLE_PROTOCOL_VERSION});
+                        return false;
+                    }
+                    send(CONNACK << 4, new byte[]{0, 0});
+                }
+                case PUBLISH -> {
+                    int qos = (flags >> 1) & 0x03;
+                    String topic = readString(body);
+                    int packetId = qos > 0 ? body.getShort() & 0xFFFF : 0;
+                    byte[] payload = new byte[body.remaining()];
+                    body.get(payload);
+                    route(topic, payload, qos, (flags & 0x01) != 0);
+                    if (qos == 1) {
+                        send(PUBACK << 4, uint16(packetId));
+                    } else if (qos == 2) {
+                        send(PUBREC << 4, uint16(packetId));
+                    }
+                }
+                case PUBREC -> send(PUBREL << 4 | 0x02, uint16(body.getShort() & 0xFFFF));
+                case PUBREL -> send(PUBCOMP << 4, uint16(body.getShort() & 0xFFFF));
+                case PUBACK, PUBCOMP -> {
+                    // no redelivery, so nothing to track
+                }
+                case SUBSCRIBE -> subscribe(body);
+                case UNSUBSCRIBE -> unsubscribe(body);
+                case PINGREQ -> send(PINGRESP << 4, new byte[0]);
+                case DISCONNECT -> {
+                    return false;
+                }
+                default -> throw new IllegalArgumentException("Unsupported packet type " + packetType + " from " + clientId);
+            }
+            return true;
+        }
+
+        private void subscribe(ByteBuffer body) {
+            int packetId = body.getShort() & 0xFFFF;
+            var subAck = new ByteArrayOutputStream();
+            subAck.writeBytes(uint16(packetId));
+            Map<String, byte[]> retainedPayloadsByTopic = new HashMap<>();
+            Map<String, Integer> qosByRetainedTopic = new HashMap<>();
+            while (body.hasRemaining()) {
+                String topicFilter = readString(body);
+                int grantedQos = Math.min(body.get() & 0x03, 2);
+                synchronized (lock) {
+                    grantedQosByFilter.computeIfAbsent(topicFilter, filter -> new HashMap<>()).put(this, grantedQos);
+                    EmbeddedMqttBroker.this.retainedPayloadsByTopic.forEachMatchingTopic(topicFilter, (topic, payload) -> {
+                        retainedPayloadsByTopic.put(topic, payload);
+                        qosByRetainedTopic.merge(topic, grantedQos, Math::max);
+                    });
+                }
+                subAck.write(grantedQos);
+            }
+            send(SUBACK << 4, subAck.toByteArray());
+            retainedPayloadsByTopic.forEach((topic, payload) -> sendPublish(topic, payload, qosByRetainedTopic.get(topic), true));
+        }
+
+        private void unsubscribe(ByteBuffer body) {
+            int packetId = body.getShort() & 0xFFFF;
+            while (body.hasRemaining()) {
+                String topicFilter = readString(body);
+                synchronized (lock) {
+                    Map<Connection, Integer> grantedQosByConnection = grantedQosByFilter.get(topicFilter);
+                    if (grantedQosByConnection != null && grantedQosByConnection.remove(this) != null && grantedQosByConnection.isEmpty()) {
+                        grantedQosByFilter.remove(topicFilter);
+                    }
+                }
+            }
+            send(UNSUBACK << 4, uint16(packetId));
+        }
+
+        void sendPublish(String topic, byte[] payload, int qos, boolean retain) {
+            var packet = new ByteArrayOutputStream(payload.length + topic.length() + 4);
+            writeString(packet, topic);
+            synchronized (out) {
+                if (qos > 0) {
+                    lastPacketId = lastPacketId % 0xFFFF + 1;
+                    packet.writeBytes(uint16(lastPacketId));
+                }
+                packet.writeBytes(payload);
+                send(PUBLISH << 4 | qos << 1 | (retain ? 1 : 0), packet.toByteArray());
+            }
+            deliveredMessageCount.increment();
+        }
+
+        private void send(int fixedHeader, byte[] body) {
+            try {
+                synchronized (out) {
+                    out.write(fixedHeader);
+                    int remainingLength = body.length;
+                    do {
+                        int encodedByte = remainingLength % 128;
+                        remainingLength /= 128;
+                        out.write(remainingLength > 0 ? encodedByte | 0x80 : encodedByte);
+                    } while (remainingLength > 0);
+                    out.write(body);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                logger.debug("Failed to send to {}", clientId, e);
+                close();
+            }
+        }
+
+        private int readRemainingLength() throws IOException {
+            int value = 0;
+            int multiplier = 1;
+            int encodedByte;
+            do {
+                encodedByte = in.read();
+                if (encodedByte < 0) {
+                    throw new EOFException();
+                }
+                value += (encodedByte & 0x7F) * multiplier;
+                multiplier *= 128;
+            } while ((encodedByte & 0x80) != 0);
+            return value;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeBytes(uint16(bytes.length));
+        out.writeBytes(bytes);
+    }
+
+    private static byte[] uint16(int value) {
+        return new byte[]{(byte) (value >> 8), (byte) value};
+    }
+}
@@ -0,0 +1,69 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+class EmbeddedMqttBrokerTest {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedMqttBrokerTest.class);
+    private EmbeddedMqttBroker broker;
+    private MqttImpl publisher;
+    private MqttImpl subscriber;
+
+    @BeforeEach
+    void setUp() {
+        broker = EmbeddedMqttBroker.start();
+        publisher = broker.newClient("publisher", 0);
+        subscriber = broker.newClient("subscriber", 2);
+        publisher.start();
+        subscriber.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriber.stop();
+        publisher.stop();
+        broker.close();
+    }
+
+    @Test
+    void deliversRetainedAndLiveMessagesWithAllQos() throws Exception {
+        publisher.publish("state/a", "retained".getBytes(UTF_8), PublishOptions.builder().setRetained(true).build()).get(5, SECONDS);
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        subscriber.subscribe("state/+", (topic, message) -> received.add(topic + '=' + message));
+
+        assertThat(received.poll(5, SECONDS), is("state/a=retained"));
+
+        publisher.publishAll(List.of(outboundMessage("state/a", 0), outboundMessage("state/b", 1), outboundMessage("state/c", 2))).get(5, SECONDS);
+        assertThat(List.of(received.poll(5, SECONDS), received.poll(5, SECONDS), received.poll(5, SECONDS)).stream().sorted().toList(),
+                   is(List.of("state/a=qos0", "state/b=qos1", "state/c=qos2")));
+    }
+
+    private static OutboundMessage outboundMessage(String topic, int qos) {
+        return OutboundMessage.builder().setTopic(topic).setMessage("qos" + qos).setOptions(PublishOptions.builder().setQos(qos).build()).build();
+    }
+
+    @Test
+    void loadGeneratorMeasuresEndToEndDelivery() throws Exception {
+        var loadGenerator = new MqttLoadGenerator(publisher, subscriber, "load");
+
+        MqttLoadGenerator.Result result = loadGenerator.run(2_000, 16, 64, PublishOptions.builder().setQos(1).build(), Duration.ofSeconds(30));
+
+        logger.info("Load: {}", result);
+        assertThat(result.messageCount(), is(2_000));
+        assertThat(broker.deliveredMessageCount(), greaterThanOrEqualTo(2_000L));
+    }
+}
@@ -0,0 +1,87 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+class LastMessageCacheTest {
+    private long nanoTime;
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxEntries() {
+        var cache = newCache(ImageCachePolicy.builder().setMaxEntries(2).build());
+        cache.put("a", message("1"));
+        cache.put("b", message("2"));
+        assertThat(matchingTopics(cache, "a"), contains("a"));
+
+        cache.put("c", message("3"));
+
+        assertThat(matchingTopics(cache, "#"), containsInAnyOrder("a", "c"));
+        assertThat(cache.stats(), is(new LastMessageCache.Stats(2, 4, 1, 0, 0)));
+    }
+
+    @Test
+    void evictsBeyondMaxBytes() {
+        var cache = newCache(ImageCachePolicy.builder().setMaxBytes(10).build());
+        assertThat(cache.put("a", message("1234")), is(true));
+        assertThat(cache.put("b", message("1234")), is(true));
+        assertThat(cache.put("b", message("4321")), is(false));
+        assertThat(cache.put("b", message("12345678")), is(true));
+
+        assertThat(matchingTopics(cache, "#"), contains("b"));
+        assertThat(cache.stats().totalBytes(), is(9L));
+
+        cache.put("c", message("12345678901"));
+        assertThat(matchingTopics(cache, "#"), is(empty()));
+        assertThat(cache.stats(), is(new LastMessageCache.Stats(0, 0, 3, 0, 0)));
+    }
+
+    @Test
+    void expiresAfterTimeToLive() {
+        var cache = newCache(ImageCachePolicy.builder().setTimeToLive(Duration.ofNanos(10)).build());
+        cache.put("a", message("1"));
+        nanoTime = 5;
+        cache.put("b", message("2"));
+        nanoTime = 10;
+
+        assertThat(matchingTopics(cache, "#"), contains("b"));
+
+        nanoTime = 15;
+        assertThat(cache.removeExpired(), is(true));
+        assertThat(cache.removeExpired(), is(false));
+        assertThat(cache.stats(), is(new LastMessageCache.Stats(0, 0, 0, 2, 0)));
+    }
+
+    @Test
+    void cachesOnlyOptedInTopics() {
+        var cache = newCache(ImageCachePolicy.builder().addCachedTopicFilters("a/+").build());
+        cache.put("a/b", message("1"));
+        assertThat(cache.put("c/d", message("2")), is(false));
+
+        assertThat(matchingTopics(cache, "#"), contains("a/b"));
+        assertThat(cache.stats().skippedCount(), is(1L));
+    }
+
+    private LastMessageCache newCache(ImageCachePolicy policy) {
+        return new LastMessageCache(policy, () -> nanoTime);
+    }
+
+    private static List<String> matchingTopics(LastMessageCache cache, String topicFilter) {
+        List<String> topics = new ArrayList<>();
+        cache.forEachMatching(topicFilter, (topic, message) -> topics.add(topic));
+        return topics;
+    }
+
+    private static byte[] message(String payload) {
+        return payload.getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,38 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.eclipse.paho.mqttv5.client.IMqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class Mqtt5ClientAdapterTest {
+    @Mock
+    private IMqttAsyncClient client;
+
+    @Test
+    void resubscribeDoesNotAskForRetainedMessagesOfSubscriptionsKeptInSession() throws Exception {
+        var adapter = new Mqtt5ClientAdapter(client, new MqttConnectionOptions());
+
+        adapter.resubscribe(List.of("a/+", "b/#"), 2, 1);
+
+        ArgumentCaptor<MqttSubscription[]> subscriptionsCaptor = ArgumentCaptor.forClass(MqttSubscription[].class);
+        verify(client).subscribe(subscriptionsCaptor.capture(), eq(null), any(), any(MqttProperties.class));
+        assertThat(Arrays.stream(subscriptionsCaptor.getValue()).map(MqttSubscription::getTopic).toList(), is(List.of("a/+", "b/#")));
+        assertThat(Arrays.stream(subscriptionsCaptor.getValue()).map(MqttSubscription::getRetainHandling).toList(), is(List.of(1, 1)));
+    }
+}
@@ -5,7 +5,7 @@ import net.yudichev.jiotty.common.async.Scheduler;
 import net.yudichev.jiotty.common.lang.Closeable;
 import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
-import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
@@ -15,16 +15,28 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
@@ -39,29 +51,18 @@ class MqttImplTest {
     @Mock
     private BiConsumer<String, String> dataCallback;
     @Captor
-    private ArgumentCaptor<IMqttMessageListener> messageListenerArgumentCaptor;
-    @Captor
     private ArgumentCaptor<IMqttActionListener> actionListenerCaptor;
     private MqttImpl mqtt;
+    private AggregatingMqttMetrics metrics;
     private MqttCallbackExtended mqttCallback;
     private ProgrammableClock clock;
 
     @BeforeEach
     void setUp() throws MqttException {
         clock = new ProgrammableClock().withMdc();
+        metrics = new AggregatingMqttMetrics();
 
-        MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
-        mqtt = new MqttImpl(client, clock, (threshold, throttlingDuration, delegate) -> e -> {}, mqttConnectOptions, clock, 0) {
-            @Override
-            void scheduleReconnect(Scheduler scheduler, Long delayMillis, Runnable runnable) {
-                scheduler.schedule(Duration.ofMillis(delayMillis), runnable);
-            }
-
-            @Override
-            void waitForConnectFutureAndThen(CompletableFuture<Void> connectFuture, Runnable whenDone) {
-                connectFuture.thenRun(whenDone);
-            }
-        };
+        mqtt = newMqtt(new Mqtt3ClientAdapter(client, new MqttConnectOptions()));
         mqtt.start();
         clock.tick();
 
@@ -85,14 +86,66 @@ class MqttImplTest {
     }
 
     @Test
-    void resubscribesOnReconnect() throws MqttException {
-        IMqttMessageListener messageListener = doSubscribe();
+    void resubscribesOnReconnectWithSingleRequest(@Mock IMqttToken subscribeToken) throws MqttException {
+        doSubscribe();
+        mqtt.subscribe(TOPIC_FILTER, (topic, message) -> {});
+        mqtt.subscribe("/other/#", dataCallback);
+        clock.tick();
+
+        mqttCallback.connectionLost(new RuntimeException("oops"));
+        mqttCallback.connectComplete(true, "serverUri");
+        clock.tick();
+
+        verify(client).subscribe(aryEq(new String[]{TOPIC_FILTER, "/other/#"}), aryEq(new int[]{2, 2}), eq(null), actionListenerCaptor.capture());
+        when(subscribeToken.getGrantedQos()).thenReturn(new int[]{2, 0x80});
+        actionListenerCaptor.getValue().onSuccess(subscribeToken);
+        clock.advanceTimeAndTick(Duration.ofSeconds(1));
+
+        verify(client).subscribe(aryEq(new String[]{"/other/#"}), aryEq(new int[]{2}), eq(null), actionListenerCaptor.capture());
+        when(subscribeToken.getGrantedQos()).thenReturn(new int[]{2});
+        actionListenerCaptor.getValue().onSuccess(subscribeToken);
+        clock.advanceTimeAndTick(Duration.ofMinutes(1));
+
+        verify(client, times(2)).subscribe(any(String[].class), any(int[].class), any(), any());
+        verify(client, times(1)).subscribe(TOPIC_FILTER, 2);
+    }
+
+    @Test
+    void reportsMetrics(@Mock IMqttToken subscribeToken) throws Exception {
+        doSubscribe();
+        mqtt.subscribe("/topic/#", (topic, message) -> {});
+        clock.tick();
+        mqttCallback.messageArrived("/topic/a", mqttMessage("msg"));
+        mqttCallback.messageArrived("/topic/b/c", mqttMessage("msg2"));
+        clock.tick();
+        mqtt.publish("/out", "12345");
+        mqtt.publish("/out", "123");
+        ArgumentCaptor<IMqttActionListener> publishListenerCaptor = ArgumentCaptor.forClass(IMqttActionListener.class);
+        verify(client, times(2)).publish(eq("/out"), any(byte[].class), anyInt(), anyBoolean(), eq(null), publishListenerCaptor.capture());
+        publishListenerCaptor.getAllValues().get(0).onSuccess(null);
+        publishListenerCaptor.getAllValues().get(1).onFailure(null, new RuntimeException("failed to publish"));
 
         mqttCallback.connectionLost(new RuntimeException("oops"));
         mqttCallback.connectComplete(true, "serverUri");
         clock.tick();
+        verify(client).subscribe(any(String[].class), any(int[].class), eq(null), actionListenerCaptor.capture());
+        when(subscribeToken.getGrantedQos()).thenReturn(new int[]{2, 2});
+        actionListenerCaptor.getValue().onSuccess(subscribeToken);
+        clock.tick();
 
-        verify(client).subscribe(TOPIC_FILTER, 2, messageListener);
+        AggregatingMqttMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.receivedMessageCount(), is(2L));
+        assertThat(snapshot.receivedBytes(), is(7L));
+        assertThat(snapshot.inboundByTopicFilter().get(TOPIC_FILTER).receivedMessageCount(), is(1L));
+        assertThat(snapshot.inboundByTopicFilter().get(TOPIC_FILTER).receivedBytes(), is(3L));
+        assertThat(snapshot.inboundByTopicFilter().get(TOPIC_FILTER).handledMessageCount(), is(1L));
+        assertThat(snapshot.inboundByTopicFilter().get("/topic/#").receivedMessageCount(), is(2L));
+        assertThat(snapshot.inboundByTopicFilter().get("/topic/#").receivedBytes(), is(7L));
+        assertThat(snapshot.outboundByTopicFilter(), is(Map.of("/out", new AggregatingMqttMetrics.OutboundStats(1, 5))));
+        assertThat(snapshot.connectionLossCount(), is(1L));
+        assertThat(snapshot.subscriptionRestoreTime().count(), is(1L));
+        assertThat(snapshot.imageCacheEntryCount(), is(2));
+        assertThat(snapshot.inboundBacklog(), is(new AggregatingMqttMetrics.BacklogStats(0, 2)));
     }
 
     @Test
@@ -113,14 +166,11 @@ class MqttImplTest {
         Closeable sub1 = mqtt.subscribe(TOPIC_FILTER, dataCallback);
         clock.tick();
 
-        verify(client).subscribe(eq(TOPIC_FILTER), eq(2), messageListenerArgumentCaptor.capture());
-        IMqttMessageListener mqttListener = messageListenerArgumentCaptor.getValue();
-
         Closeable sub2 = mqtt.subscribe(TOPIC_FILTER, dataCallback2);
         clock.tick();
-        verify(client, times(1)).subscribe(eq(TOPIC_FILTER), eq(2), any());
+        verify(client, times(1)).subscribe(TOPIC_FILTER, 2);
 
-        mqttListener.messageArrived("/topic/a", mqttMessage("msg"));
+        mqttCallback.messageArrived("/topic/a", mqttMessage("msg"));
         clock.tick();
         verify(dataCallback).accept("/topic/a", "msg");
         verify(dataCallback2).accept("/topic/a", "msg");
@@ -129,7 +179,7 @@ class MqttImplTest {
         clock.tick();
         verify(client, never()).unsubscribe(TOPIC_FILTER);
 
-        mqttListener.messageArrived("/topic/a", mqttMessage("msg2"));
+        mqttCallback.messageArrived("/topic/a", mqttMessage("msg2"));
         clock.tick();
         verify(dataCallback, never()).accept("/topic/a", "msg2");
         verify(dataCallback2).accept("/topic/a", "msg2");
@@ -139,13 +189,164 @@ class MqttImplTest {
         verify(client).unsubscribe(TOPIC_FILTER);
     }
 
-    private IMqttMessageListener doSubscribe() throws MqttException {
+    @Test
+    void dispatchesToAllMatchingFilters(@Mock BiConsumer<String, String> dataCallback2,
+                                        @Mock BiConsumer<String, String> dataCallback3) throws Exception {
+        doSubscribe();
+        mqtt.subscribe("/topic/#", dataCallback2);
+        mqtt.subscribe("/other/+", dataCallback3);
+        clock.tick();
+
+        mqttCallback.messageArrived("/topic/a", mqttMessage("msg"));
+        clock.tick();
+
+        verify(dataCallback).accept("/topic/a", "msg");
+        verify(dataCallback2).accept("/topic/a", "msg");
+        verify(dataCallback3, never()).accept(any(), any());
+    }
+
+    @Test
+    void sharedSubscriptionMatchesTopicsWithoutSharePrefix(@Mock BiConsumer<String, String> dataCallback2) throws Exception {
+        when(client.isConnected()).thenReturn(true);
+        Closeable sub1 = mqtt.subscribe("$share/group/topic/+", dataCallback);
+        Closeable sub2 = mqtt.subscribe("$share/group/topic/+", dataCallback2);
+        clock.tick();
+        verify(client).subscribe("$share/group/topic/+", 2);
+
+        mqttCallback.messageArrived("topic/a", mqttMessage("msg"));
+        clock.tick();
+        verify(dataCallback).accept("topic/a", "msg");
+        verify(dataCallback2).accept("topic/a", "msg");
+
+        sub1.close();
+        clock.tick();
+        verify(client, never()).unsubscribe(any(String.class));
+        sub2.close();
+        clock.tick();
+        verify(client).unsubscribe("$share/group/topic/+");
+    }
+
+    @Test
+    void tellsSharedAndPlainSubscriptionsToSameFilterApartBySubscriptionId(@Mock MqttClientAdapter clientAdapter,
+                                                                          @Mock BiConsumer<String, String> sharedDataCallback) {
+        when(clientAdapter.maxInFlight()).thenReturn(10);
+        when(clientAdapter.connect()).thenReturn(CompletableFuture.completedFuture(null));
+        var mqtt5 = newMqtt(clientAdapter);
+        mqtt5.start();
+        clock.tick();
+        ArgumentCaptor<MqttClientAdapter.Callback> callbackCaptor = ArgumentCaptor.forClass(MqttClientAdapter.Callback.class);
+        verify(clientAdapter).setCallback(callbackCaptor.capture());
+        MqttClientAdapter.Callback callback = callbackCaptor.getValue();
+
+        mqtt5.subscribe("topic/+", dataCallback);
+        mqtt5.subscribe("$share/group/topic/+", sharedDataCallback);
+        clock.tick();
+        ArgumentCaptor<Integer> plainSubscriptionId = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<Integer> sharedSubscriptionId = ArgumentCaptor.forClass(Integer.class);
+        verify(clientAdapter).subscribe(eq("topic/+"), eq(2), plainSubscriptionId.capture());
+        verify(clientAdapter).subscribe(eq("$share/group/topic/+"), eq(2), sharedSubscriptionId.capture());
+
+        callback.messageArrived("topic/a", "plain".getBytes(UTF_8), List.of(plainSubscriptionId.getValue()));
+        callback.messageArrived("topic/a", "shared".getBytes(UTF_8), List.of(sharedSubscriptionId.getValue()));
+        clock.tick();
+
+        verify(dataCallback).accept("topic/a", "plain");
+        verify(dataCallback, never()).accept("topic/a", "shared");
+        verify(sharedDataCallback).accept("topic/a", "shared");
+        verify(sharedDataCallback, never()).accept("topic/a", "plain");
+    }
+
+    @Test
+    void subscribeBytesDeliversPayloadView(@Mock BiConsumer<String, ByteBuffer> bytesCallback) throws Exception {
+        mqtt.subscribeBytes(TOPIC_FILTER, bytesCallback);
+        clock.tick();
+
+        mqttCallback.messageArrived("/topic/a", mqttMessage("msg"));
+        clock.tick();
+
+        verify(bytesCallback).accept("/topic/a", ByteBuffer.wrap("msg".getBytes(UTF_8)));
+    }
+
+    @Test
+    void typedSubscribeParsesJsonPayload(@Mock BiConsumer<String, Payload> typedCallback) throws Exception {
+        mqtt.subscribe(TOPIC_FILTER, Payload.class, typedCallback);
+        clock.tick();
+
+        mqttCallback.messageArrived("/topic/a", mqttMessage("not json"));
+        mqttCallback.messageArrived("/topic/a", mqttMessage("{\"key\": 1}"));
+        clock.tick();
+
+        verify(typedCallback).accept("/topic/a", new Payload(1));
+    }
+
+    @Test
+    void dispatchesToSubscriptionExecutor() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        mqttCallback.messageArrived("/topic/a", mqttMessage("image"));
+        mqtt.subscribe(TOPIC_FILTER, dataCallback, SubscriptionOptions.builder().setExecutor(tasks::add).build());
+        clock.tick();
+        mqttCallback.messageArrived("/topic/a", mqttMessage("msg"));
+        clock.tick();
+
+        verify(dataCallback, never()).accept(any(), any());
+        assertThat(tasks, hasSize(2));
+        tasks.forEach(Runnable::run);
+        InOrder inOrder = inOrder(dataCallback);
+        inOrder.verify(dataCallback).accept("/topic/a", "image");
+        inOrder.verify(dataCallback).accept("/topic/a", "msg");
+    }
+
+    @Test
+    void conflatingSubscriptionSeesOnlyLatestMessagePerTopic() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        mqtt.subscribe(TOPIC_FILTER, dataCallback, SubscriptionOptions.builder().setExecutor(tasks::add).setConflating(true).build());
+        clock.tick();
+
+        mqttCallback.messageArrived("/topic/a", mqttMessage("a1"));
+        mqttCallback.messageArrived("/topic/b", mqttMessage("b1"));
+        mqttCallback.messageArrived("/topic/a", mqttMessage("a2"));
+        mqttCallback.messageArrived("/topic/a", mqttMessage("a3"));
+        clock.tick();
+
+        assertThat(tasks, hasSize(2));
+        tasks.forEach(Runnable::run);
+        verify(dataCallback).accept("/topic/a", "a3");
+        verify(dataCallback).accept("/topic/b", "b1");
+        verify(dataCallback, times(2)).accept(any(), any());
+
+        tasks.clear();
+        mqttCallback.messageArrived("/topic/a", mqttMessage("a4"));
+        clock.tick();
+        assertThat(tasks, hasSize(1));
+    }
+
+    private MqttImpl newMqtt(MqttClientAdapter clientAdapter) {
+        return new MqttImpl(clientAdapter,
+                            clock,
+                            (threshold, throttlingDuration, delegate) -> e -> {},
+                            ImageCachePolicy.builder().build(),
+                            0,
+                            metrics,
+                            clock,
+                            0) {
+            @Override
+            void scheduleReconnect(Scheduler scheduler, Long delayMillis, Runnable runnable) {
+                scheduler.schedule(Duration.ofMillis(delayMillis), runnable);
+            }
+
+            @Override
+            void waitForConnectFutureAndThen(CompletableFuture<Void> connectFuture, Runnable whenDone) {
+                connectFuture.thenRun(whenDone);
+            }
+        };
+    }
+
+    private void doSubscribe() throws MqttException {
         mqttCallback.connectComplete(false, "serverUrl");
         mqtt.subscribe(TOPIC_FILTER, dataCallback);
         clock.tick();
 
-        verify(client).subscribe(eq(TOPIC_FILTER), eq(2), messageListenerArgumentCaptor.capture());
-        return messageListenerArgumentCaptor.getValue();
+        verify(client).subscribe(TOPIC_FILTER, 2);
     }
 
     private static MqttMessage mqttMessage() {
@@ -155,4 +356,7 @@ class MqttImplTest {
     private static MqttMessage mqttMessage(String msg) {
         return new MqttMessage(msg.getBytes(UTF_8));
     }
-}
\ No newline at end of file
+
+    record Payload(int key) {
+    }
+}
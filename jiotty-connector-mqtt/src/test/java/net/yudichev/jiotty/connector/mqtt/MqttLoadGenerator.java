@@ -0,0 +1,117 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.lang.Closeable;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Publishes messages through one {@link Mqtt} and measures their delivery to a subscriber of another: throughput and the latency from
+ * publish to the subscriber callback. Each payload carries its publish time, so both must run in the same JVM.
+ */
+public final class MqttLoadGenerator {
+    private final Mqtt publisher;
+    private final Mqtt subscriber;
+    private final String topicPrefix;
+
+    public MqttLoadGenerator(Mqtt publisher, Mqtt subscriber, String topicPrefix) {
+        this.publisher = checkNotNull(publisher);
+        this.subscriber = checkNotNull(subscriber);
+        this.topicPrefix = checkNotNull(topicPrefix);
+    }
+
+    public Result run(int messageCount, int topicCount, int payloadSize, PublishOptions options, Duration timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        checkArgument(messageCount > 0, "messageCount must be positive");
+        checkArgument(topicCount > 0, "topicCount must be positive");
+        checkArgument(payloadSize >= Long.BYTES, "payloadSize must fit the publish time");
+        long runStartNanos = System.nanoTime();
+        long deadlineNanos = runStartNanos + timeout.toNanos();
+        String probeTopic = topicPrefix + "/probe";
+        // messages cached from previous runs may be delivered on subscribing, so the probe is unique and older data is ignored
+        byte[] probePayload = Long.toString(runStartNanos).getBytes(UTF_8);
+        var probeReceived = new CountDownLatch(1);
+        long[] latencyNanos = new long[messageCount];
+        var receivedCount = new AtomicInteger();
+        var allReceived = new CountDownLatch(messageCount);
+        try (Closeable ignored = subscriber.subscribeBytes(topicPrefix + "/#", (topic, payload) -> {
+            long receivedNanos = System.nanoTime();
+            if (topic.equals(probeTopic)) {
+                if (payload.equals(ByteBuffer.wrap(probePayload))) {
+                    probeReceived.countDown();
+                }
+                return;
+            }
+            if (payload.remaining() < Long.BYTES || payload.getLong(0) - runStartNanos < 0) {
+                return;
+            }
+            int index = receivedCount.getAndIncrement();
+            if (index < messageCount) {
+                latencyNanos[index] = receivedNanos - payload.getLong(0);
+                allReceived.countDown();
+            }
+        })) {
+            // the subscription becomes active asynchronously
+            do {
+                publisher.publish(probeTopic, probePayload, PublishOptions.builder().build());
+                checkTimeout(deadlineNanos);
+            } while (!probeReceived.await(100, MILLISECONDS));
+
+            String[] topics = new String[topicCount];
+            Arrays.setAll(topics, i -> topicPrefix + '/' + i);
+            CompletableFuture<?>[] publishFutures = new CompletableFuture<?>[messageCount];
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < messageCount; i++) {
+                byte[] payload = new byte[payloadSize];
+                ByteBuffer.wrap(payload).putLong(0, System.nanoTime());
+                publishFutures[i] = publisher.publish(topics[i % topicCount], payload, options);
+            }
+            if (!allReceived.await(deadlineNanos - System.nanoTime(), NANOSECONDS)) {
+                throw new TimeoutException("Received " + receivedCount.get() + " of " + messageCount + " messages");
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            CompletableFuture.allOf(publishFutures).get(Math.max(0, deadlineNanos - System.nanoTime()), NANOSECONDS);
+
+            Arrays.sort(latencyNanos);
+            return new Result(messageCount,
+                              Duration.ofNanos(elapsedNanos),
+                              Duration.ofNanos(percentile(latencyNanos, 50)),
+                              Duration.ofNanos(percentile(latencyNanos, 99)),
+                              Duration.ofNanos(latencyNanos[messageCount - 1]));
+        }
+    }
+
+    private static void checkTimeout(long deadlineNanos) throws TimeoutException {
+        if (System.nanoTime() - deadlineNanos > 0) {
+            throw new TimeoutException("Subscription did not become active");
+        }
+    }
+
+    private static long percentile(long[] sortedValues, int percentile) {
+        return sortedValues[(int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1];
+    }
+
+    public record Result(int messageCount, Duration elapsed, Duration p50Latency, Duration p99Latency, Duration maxLatency) {
+        public double messagesPerSecond() {
+            return messageCount * 1e9 / elapsed.toNanos();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d messages in %s (%.0f/s), latency p50 %s, p99 %s, max %s",
+                                 messageCount, elapsed, messagesPerSecond(), p50Latency, p99Latency, maxLatency);
+        }
+    }
+}
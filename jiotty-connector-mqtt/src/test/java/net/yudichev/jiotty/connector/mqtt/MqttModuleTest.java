@@ -21,6 +21,9 @@ class MqttModuleTest {
                 .setClientId("ci")
                 .setServerUri("su")
                 .withConnectionOptionsCustomised(mqttConnectOptions -> mqttConnectOptions.setUserName("u"))
+                .withImageCachePolicy(ImageCachePolicy.builder().setMaxEntries(1000).build())
+                .withDispatchStripes(4)
+                .withMetrics(new AggregatingMqttMetrics())
                 .withAnnotation(forAnnotation(annotation))
                 .build();
 
@@ -28,4 +31,15 @@ class MqttModuleTest {
 
         Guice.createInjector(new TimeModule(), new ExecutorModule(), module).getBinding(module.getExposedKey());
     }
+
+    @Test
+    void injectorMqtt5() {
+        ExposedKeyModule<Mqtt> module = MqttModule.builder()
+                .setClientId("ci")
+                .setServerUri("su")
+                .withMqtt5(mqttConnectionOptions -> mqttConnectionOptions.setSessionExpiryInterval(60L))
+                .build();
+
+        Guice.createInjector(new TimeModule(), new ExecutorModule(), module).getBinding(module.getExposedKey());
+    }
 }
\ No newline at end of file
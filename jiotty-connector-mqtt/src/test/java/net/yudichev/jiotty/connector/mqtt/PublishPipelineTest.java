@@ -0,0 +1,137 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class PublishPipelineTest {
+    private static final PublishOptions OPTIONS = PublishOptions.builder().setQos(2).setRetained(true).build();
+    @Mock
+    private IMqttAsyncClient client;
+    private PublishPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new PublishPipeline(new Mqtt3ClientAdapter(client, new MqttConnectOptions()), 2);
+    }
+
+    @Test
+    void queuesUntilOpenAndKeepsInFlightWindow() throws MqttException {
+        CompletableFuture<Void> future1 = pipeline.publish("t1", payload("1"), OPTIONS);
+        CompletableFuture<Void> batchFuture = pipeline.publishAll(List.of(pendingPublish("t2"), pendingPublish("t3")));
+        verify(client, never()).publish(any(), any(), anyInt(), anyBoolean(), any(), any());
+
+        pipeline.open();
+        ArgumentCaptor<IMqttActionListener> listenerCaptor = ArgumentCaptor.forClass(IMqttActionListener.class);
+        verify(client).publish(eq("t1"), eq(payload("1")), eq(2), eq(true), eq(null), listenerCaptor.capture());
+        verify(client).publish(eq("t2"), any(), eq(2), eq(true), eq(null), any());
+        verify(client, never()).publish(eq("t3"), any(), anyInt(), anyBoolean(), any(), any());
+
+        listenerCaptor.getValue().onSuccess(null);
+        assertThat(future1.isDone(), is(true));
+        verify(client).publish(eq("t3"), any(), eq(2), eq(true), eq(null), any());
+        assertThat(batchFuture.isDone(), is(false));
+    }
+
+    @Test
+    void failsFutureIfClientRejectsPublish() throws MqttException {
+        doThrow(new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED))
+                .when(client).publish(any(), any(), anyInt(), anyBoolean(), any(), any());
+        pipeline.open();
+
+        CompletableFuture<Void> batchFuture = pipeline.publishAll(List.of(pendingPublish("t1"), pendingPublish("t2"), pendingPublish("t3")));
+
+        assertThat(batchFuture.isCompletedExceptionally(), is(true));
+        verify(client, times(3)).publish(any(), any(), anyInt(), anyBoolean(), any(), any());
+    }
+
+    @Test
+    void keepsPublishOrderWhenCompletionsRaceWithPublishers() throws Exception {
+        int publisherCount = 4;
+        int messageCount = 20_000;
+        List<String> published = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService completer = Executors.newFixedThreadPool(4);
+        doAnswer(invocation -> {
+            published.add(invocation.getArgument(0) + "/" + new String(invocation.<byte[]>getArgument(1), UTF_8));
+            IMqttActionListener listener = invocation.getArgument(5);
+            completer.execute(() -> listener.onSuccess(null));
+            return null;
+        }).when(client).publish(any(), any(), anyInt(), anyBoolean(), any(), any());
+        pipeline.open();
+
+        ExecutorService publishers = Executors.newFixedThreadPool(publisherCount);
+        try {
+            List<Future<CompletableFuture<Void>>> lastFutures = IntStream.range(0, publisherCount)
+                    .mapToObj(publisher -> publishers.submit(() -> {
+                        CompletableFuture<Void> future = null;
+                        for (int i = 0; i < messageCount; i++) {
+                            future = pipeline.publish("t" + publisher, payload(Integer.toString(i)), OPTIONS);
+                        }
+                        return future;
+                    }))
+                    .collect(toList());
+            for (var lastFuture : lastFutures) {
+                lastFuture.get(10, SECONDS).get(10, SECONDS);
+            }
+        } finally {
+            publishers.shutdown();
+            completer.shutdown();
+        }
+
+        for (int publisher = 0; publisher < publisherCount; publisher++) {
+            String topic = "t" + publisher;
+            List<String> publishedByPublisher = published.stream().filter(message -> message.startsWith(topic + "/")).collect(toList());
+            assertThat(publishedByPublisher, is(IntStream.range(0, messageCount).mapToObj(i -> topic + "/" + i).collect(toList())));
+        }
+    }
+
+    @Test
+    void failsQueuedOnClose() {
+        CompletableFuture<Void> future = pipeline.publish("t1", payload("1"), OPTIONS);
+
+        pipeline.close();
+
+        assertThat(future.isCompletedExceptionally(), is(true));
+        assertThat(pipeline.publish("t2", payload("2"), OPTIONS).isCompletedExceptionally(), is(true));
+    }
+
+    private static PublishPipeline.PendingPublish pendingPublish(String topic) {
+        return new PublishPipeline.PendingPublish(topic, payload(topic), OPTIONS);
+    }
+
+    private static byte[] payload(String value) {
+        return value.getBytes(UTF_8);
+    }
+}
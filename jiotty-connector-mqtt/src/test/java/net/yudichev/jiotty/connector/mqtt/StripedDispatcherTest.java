@@ -0,0 +1,81 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import net.yudichev.jiotty.common.async.ExecutorFactoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class StripedDispatcherTest {
+    private final AggregatingMqttMetrics metrics = new AggregatingMqttMetrics();
+    private StripedDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new StripedDispatcher(new ExecutorFactoryImpl(), "test", 2, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.close();
+    }
+
+    @Test
+    void slowTopicDoesNotBlockOtherStripeAndOrderIsPreserved() throws InterruptedException {
+        String slowTopic = topicInStripe(0);
+        String fastTopic = topicInStripe(1);
+        var slowTaskStarted = new CountDownLatch(1);
+        var slowTaskRelease = new CountDownLatch(1);
+        var fastTasksDone = new CountDownLatch(1);
+        List<Integer> slowTopicSequence = new CopyOnWriteArrayList<>();
+
+        dispatcher.execute(slowTopic, () -> {
+            slowTaskStarted.countDown();
+            try {
+                slowTaskRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(slowTaskStarted.await(5, SECONDS), is(true));
+        IntStream.range(0, 100).forEach(i -> dispatcher.execute(slowTopic, () -> slowTopicSequence.add(i)));
+        dispatcher.execute(fastTopic, fastTasksDone::countDown);
+
+        assertThat(fastTasksDone.await(5, SECONDS), is(true));
+        assertThat(dispatcher.stats().pendingTaskCount(), is(100));
+        assertThat(metrics.snapshot().dispatchBacklogByStripe().get(0), is(new AggregatingMqttMetrics.BacklogStats(100, 100)));
+
+        var slowTasksDone = new CountDownLatch(1);
+        dispatcher.execute(slowTopic, slowTasksDone::countDown);
+        slowTaskRelease.countDown();
+        assertThat(slowTasksDone.await(5, SECONDS), is(true));
+        assertThat(slowTopicSequence, is(IntStream.range(0, 100).boxed().toList()));
+        assertThat(dispatcher.stats(), is(new StripedDispatcher.Stats(2, 103, 0, 101)));
+        assertThat(metrics.snapshot().dispatchBacklogByStripe().get(0), is(new AggregatingMqttMetrics.BacklogStats(0, 101)));
+    }
+
+    @Test
+    void runsInlineWithoutStripes() {
+        try (var inlineDispatcher = new StripedDispatcher(new ExecutorFactoryImpl(), "test", 0, MqttMetrics.NOOP)) {
+            Thread[] thread = new Thread[1];
+            inlineDispatcher.execute("topic", () -> thread[0] = Thread.currentThread());
+            assertThat(thread[0], is(Thread.currentThread()));
+        }
+    }
+
+    private static String topicInStripe(int stripe) {
+        return IntStream.range(0, 100)
+                        .mapToObj(i -> "topic/" + i)
+                        .filter(topic -> Math.floorMod(topic.hashCode(), 2) == stripe)
+                        .findFirst()
+                        .orElseThrow();
+    }
+}
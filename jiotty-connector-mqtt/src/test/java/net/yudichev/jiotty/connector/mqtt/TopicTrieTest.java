@@ -0,0 +1,95 @@
+package net.yudichev.jiotty.connector.mqtt;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class TopicTrieTest {
+    private TopicTrie<String> trie;
+
+    @BeforeEach
+    void setUp() {
+        trie = new TopicTrie<>();
+    }
+
+    @Test
+    void matchesFiltersForTopic() {
+        for (String filter : new String[]{"a/b", "a/+", "a/#", "+/b", "#", "a/b/c", "+", "/a", "+/a", "a/b/#"}) {
+            trie.put(filter, filter);
+        }
+
+        assertThat(matchingFilters("a/b"), containsInAnyOrder("a/b", "a/+", "a/#", "+/b", "#", "a/b/#"));
+        assertThat(matchingFilters("a"), containsInAnyOrder("a/#", "#", "+"));
+        assertThat(matchingFilters("/a"), containsInAnyOrder("/a", "+/a", "#"));
+        assertThat(matchingFilters("c/d/e"), containsInAnyOrder("#"));
+    }
+
+    @Test
+    void wildcardsDoNotMatchSystemTopicsAtFirstLevel() {
+        for (String filter : new String[]{"#", "+/x", "$SYS/#", "$SYS/+"}) {
+            trie.put(filter, filter);
+        }
+
+        assertThat(matchingFilters("$SYS/x"), containsInAnyOrder("$SYS/#", "$SYS/+"));
+
+        trie = new TopicTrie<>();
+        trie.put("$SYS/x", "$SYS/x");
+        trie.put("a/x", "a/x");
+        assertThat(matchingTopics("#"), containsInAnyOrder("a/x"));
+        assertThat(matchingTopics("+/x"), containsInAnyOrder("a/x"));
+        assertThat(matchingTopics("$SYS/#"), containsInAnyOrder("$SYS/x"));
+    }
+
+    @Test
+    void matchesTopicsForFilter() {
+        for (String topic : new String[]{"a", "a/b", "a/c", "a/b/c", "/a", "b/b", "a//c"}) {
+            trie.put(topic, topic);
+        }
+
+        assertThat(matchingTopics("a/+"), containsInAnyOrder("a/b", "a/c"));
+        assertThat(matchingTopics("a/#"), containsInAnyOrder("a", "a/b", "a/c", "a/b/c", "a//c"));
+        assertThat(matchingTopics("+/b"), containsInAnyOrder("a/b", "b/b"));
+        assertThat(matchingTopics("a/+/c"), containsInAnyOrder("a/b/c", "a//c"));
+        assertThat(matchingTopics("+/a"), containsInAnyOrder("/a"));
+        assertThat(matchingTopics("#"), containsInAnyOrder("a", "a/b", "a/c", "a/b/c", "/a", "b/b", "a//c"));
+        assertThat(matchingTopics("a/b"), containsInAnyOrder("a/b"));
+        assertThat(matchingTopics("x/#"), is(empty()));
+    }
+
+    @Test
+    void putGetRemove() {
+        assertThat(trie.put("a/b", "1"), is(nullValue()));
+        assertThat(trie.put("a/b", "2"), is("1"));
+        trie.put("a/b/c", "3");
+        assertThat(trie.size(), is(2));
+        assertThat(trie.get("a/b"), is("2"));
+        assertThat(trie.get("a"), is(nullValue()));
+
+        assertThat(trie.remove("a/b"), is("2"));
+        assertThat(trie.remove("a/b"), is(nullValue()));
+        assertThat(trie.get("a/b/c"), is("3"));
+        assertThat(trie.remove("a/b/c"), is("3"));
+        assertThat(trie.size(), is(0));
+        assertThat(matchingTopics("#"), is(empty()));
+    }
+
+    private Set<String> matchingFilters(String topic) {
+        Set<String> result = new HashSet<>();
+        trie.forEachMatchingFilter(topic, (key, value) -> result.add(key));
+        return result;
+    }
+
+    private Set<String> matchingTopics(String topicFilter) {
+        Set<String> result = new HashSet<>();
+        trie.forEachMatchingTopic(topicFilter, (key, value) -> result.add(key));
+        return result;
+    }
+}
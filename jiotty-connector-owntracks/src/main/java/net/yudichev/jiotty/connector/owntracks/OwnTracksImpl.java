@@ -3,7 +3,6 @@ package net.yudichev.jiotty.connector.owntracks;
 import com.google.inject.BindingAnnotation;
 import net.yudichev.jiotty.common.async.DispatchedConsumer;
 import net.yudichev.jiotty.common.lang.Closeable;
-import net.yudichev.jiotty.common.lang.Json;
 import net.yudichev.jiotty.connector.mqtt.Mqtt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,12 +35,12 @@ final class OwnTracksImpl implements OwnTracks {
 
     @Override
     public Closeable subscribeToTransitions(Consumer<OwnTracksUpdate<OwnTracksTransition>> handler, Executor executor) {
-        return mqttSubscribe("owntracks/+/+/event", dispatched(parsed(orderProtected(handler), OwnTracksTransition.class), executor));
+        return mqttSubscribe("owntracks/+/+/event", OwnTracksTransition.class, dispatched(orderProtected(handler), executor));
     }
 
     @Override
     public Closeable subscribeToLocationUpdates(Consumer<OwnTracksUpdate<OwnTrackLocationUpdate>> handler, Executor executor) {
-        return mqttSubscribe("owntracks/+/+", dispatched(parsed(lwtIgnored(orderProtected(handler)), OwnTracksLocationUpdateOrLwt.class), executor));
+        return mqttSubscribe("owntracks/+/+", OwnTracksLocationUpdateOrLwt.class, dispatched(lwtIgnored(orderProtected(handler)), executor));
     }
 
     @Override
@@ -50,11 +49,11 @@ final class OwnTracksImpl implements OwnTracks {
                 "{\"_type\":\"cmd\",\"action\":\"reportLocation\"}");
     }
 
-    private Closeable mqttSubscribe(String topic, Consumer<OwnTracksJsonMessage> consumer) {
-        return mqtt.subscribe(topic, (theTopic, data) -> {
-            logger.debug("IN {}: {}", theTopic, data);
+    private <T> Closeable mqttSubscribe(String topic, Class<T> payloadType, Consumer<OwnTracksUpdate<T>> consumer) {
+        return mqtt.subscribe(topic, payloadType, (theTopic, payload) -> {
+            logger.debug("IN {}: {}", theTopic, payload);
             DeviceKey deviceKey = parseTopic(theTopic);
-            consumer.accept(OwnTracksJsonMessage.of(deviceKey, data));
+            consumer.accept(OwnTracksUpdate.of(deviceKey, payload));
         });
     }
 
@@ -78,10 +77,6 @@ final class OwnTracksImpl implements OwnTracks {
         return new DispatchedConsumer<>(delegate, executor);
     }
 
-    private static <T> Consumer<OwnTracksJsonMessage> parsed(Consumer<OwnTracksUpdate<T>> handler, Class<T> type) {
-        return ownTracksJsonMessage -> handler.accept(OwnTracksUpdate.of(ownTracksJsonMessage.deviceKey(), Json.parse(ownTracksJsonMessage.payload(), type)));
-    }
-
     @Retention(RUNTIME)
     @Target({FIELD, PARAMETER, METHOD})
     @BindingAnnotation